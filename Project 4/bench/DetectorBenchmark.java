@@ -0,0 +1,516 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Times thresh(), detect() in every mode, DisjointSets find and union in different
+ * union orders and with every link policy, Set.addAll() and iteration, the top-k of
+ * outputResults(), on the sample images and
+ * on generated ones: a checkerboard of single pixels (every pixel is its own blob),
+ * noise (half of the pixels, at random) and one giant blob, at several resolutions.
+ *
+ * Every case is run for a few warmup rounds and then timed, and the best and the median
+ * time are printed with the bytes allocated per run, as counted by the ThreadMXBean of
+ * the JVM for all its threads, and the allocation rate. Setting up a run, like copying
+ * the image or building a fresh DisjointSets, is not timed. The generated images are
+ * written as raw rasters so reading them is not what gets timed.
+ *
+ * The same cases are run by the JMH benchmarks of the jmh folder, through prepare(),
+ * which are the ones to trust: they fork a fresh JVM for every case and report the
+ * allocations with -prof gc. Build and run them from the project folder with
+ * mvn -B -P jmh package
+ * java -jar target/benchmarks.jar -prof gc
+ * This class is only the fallback for when Maven is not at hand. Run it from the
+ * project folder with the compiled src and bench classes on the classpath, with a
+ * large heap for the disjoint_sets mode on the larger images:
+ * java -Xmx4g DetectorBenchmark [rounds] [filter] 2>/dev/null
+ * where only the cases whose name contains filter are run, and stderr only gets the
+ * lines of the saved outputResults() images.
+ *
+ */
+public class DetectorBenchmark {
+	private static final int[] SIZES = { 256, 512, 1024 }; // the width and height of the generated images
+	private static final Color COLOR = Color.RED; // the color of the generated blobs
+	private static final int OK_DIST = 10;
+	private static final int DS_SIZE = 1 << 18; // the elements of the DisjointSets cases
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private static final PrintStream NOWHERE = new PrintStream(new OutputStream() {
+		public void write(int b) {
+		}
+	});
+
+	private static ArrayList<Case> prepared; // the cases of prepare(), built on its first call
+
+	/**
+	 * One thing to time: prepare() sets up a run without being timed, then run() is timed
+	 * and returns what it computed, and release() drops what the last run kept once the
+	 * case is done
+	 */
+	private static abstract class Case {
+		private final String name;
+
+		public Case(String name) {
+			this.name = name;
+		}
+
+		public void prepare() throws IOException {
+		}
+
+		public abstract Object run() throws IOException;
+
+		public void release() {
+		}
+	}
+
+	/**
+	 * An image to detect in: its file and the color to detect
+	 */
+	private static class Input {
+		private final String name;
+		private final String file;
+		private final Color color;
+		private final int okDist;
+
+		public Input(String name, String file, Color color, int okDist) {
+			this.name = name;
+			this.file = file;
+			this.color = color;
+			this.okDist = okDist;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+		String filter = (args.length > 1) ? args[1] : "";
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			System.err.println("! Error: this JVM does not count allocated bytes, the MB columns are 0");
+		} else {
+			THREADS.setThreadAllocatedMemoryEnabled(true);
+		}
+
+		System.out.printf("%-44s %10s %10s %10s %10s%n", "case", "best ms", "median ms", "MB/run", "MB/s");
+		for (Case c : buildCases()) {
+			if (c.name.contains(filter)) {
+				measure(c, rounds);
+			}
+		}
+	}
+
+	/**
+	 * This method prepares a run of a case for the JMH benchmarks, which are in a package
+	 * and so cannot name the classes of the default package. Every call sets up a fresh
+	 * run, like prepare() does before every timed run of main()
+	 *
+	 * @param name the name of the case, as printed by main()
+	 * @return the run, returning what it computed
+	 * @throws IOException if an image cannot be read or written
+	 */
+	public static synchronized Callable<Object> prepare(String name) throws IOException {
+		if (prepared == null) {
+			prepared = buildCases();
+		}
+		for (final Case c : prepared) {
+			if (c.name.equals(name)) {
+				c.prepare();
+				return new Callable<Object>() {
+					public Object call() throws IOException {
+						return c.run();
+					}
+				};
+			}
+		}
+		throw new IllegalArgumentException("! Error: there is no case " + name);
+	}
+
+	/**
+	 * This method builds all the cases, writing the generated images
+	 *
+	 * @return the cases, in the order main() runs them
+	 * @throws IOException if an image cannot be read or written
+	 */
+	private static ArrayList<Case> buildCases() throws IOException {
+		ArrayList<Input> inputs = new ArrayList<>();
+		inputs.add(new Input("04_Circles", "04_Circles.png", new Color(0, 0, 255), 30));
+		inputs.add(new Input("08_Lego", "08_Lego_dublo_arto_alanenpaa_5.jpg", new Color(255, 0, 0), 100));
+		inputs.add(new Input("09_Lego_Bricks", "09_Lego_Color_Bricks.jpg", new Color(255, 117, 24), 33));
+		File directory = new File(System.getProperty("java.io.tmpdir"), "blob-bench");
+		directory.mkdirs();
+		for (int size : SIZES) {
+			inputs.add(generate(directory, "checkerboard", size));
+			inputs.add(generate(directory, "noise", size));
+			inputs.add(generate(directory, "giant", size));
+		}
+
+		ArrayList<Case> cases = new ArrayList<>();
+		for (Input input : inputs) {
+			addImageCases(cases, input);
+		}
+		addDisjointSetsCases(cases);
+		addSetCases(cases);
+		return cases;
+	}
+
+	/**
+	 * This method runs a case and prints its times and allocations
+	 *
+	 * @param c the case
+	 * @param rounds the number of timed runs, after as many warmup runs
+	 * @throws IOException if an image cannot be read or written
+	 */
+	private static void measure(Case c, int rounds) throws IOException {
+		for (int i = 0; i < rounds; i++) {
+			c.prepare();
+			c.run();
+		}
+		long[] times = new long[rounds];
+		long allocated = 0;
+		for (int i = 0; i < rounds; i++) {
+			c.prepare();
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			c.run();
+			times[i] = System.nanoTime() - start;
+			allocated += allocatedBytes() - bytes;
+		}
+		c.release();
+		Arrays.sort(times);
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		double megabytes = allocated / (double) rounds / (1 << 20);
+		System.out.printf("%-44s %10.2f %10.2f %10.2f %10.0f%n", c.name, times[0] / 1e6, times[rounds / 2] / 1e6,
+				megabytes, allocated / (double) (1 << 20) / (total / 1e9));
+	}
+
+	/**
+	 * @return the bytes allocated so far by all the live threads, the pool of the parallel modes included
+	 */
+	private static long allocatedBytes() {
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			return 0;
+		}
+		long total = 0;
+		for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * This method writes a generated image as a raw raster
+	 *
+	 * @param directory the folder of the file
+	 * @param kind checkerboard, noise or giant
+	 * @param size the width and height
+	 * @return the image, to detect COLOR in
+	 * @throws IOException if the file cannot be written
+	 */
+	private static Input generate(File directory, String kind, int size) throws IOException {
+		int[] pixels = new int[size * size];
+		int color = COLOR.getRGB();
+		int background = Color.WHITE.getRGB();
+		Random random = new Random(size);
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				boolean set;
+				if (kind.equals("checkerboard")) {
+					set = ((x + y) & 1) == 0;
+				} else if (kind.equals("noise")) {
+					set = random.nextBoolean();
+				} else {
+					set = x > 0 && y > 0 && x < size - 1 && y < size - 1;
+				}
+				pixels[y * size + x] = set ? color : background;
+			}
+		}
+		File file = new File(directory, kind + "_" + size + ".raw");
+		new RawRaster(size, size, RawRaster.PIXELS, pixels).write(file.getPath());
+		return new Input(kind + "_" + size, file.getPath(), COLOR, OK_DIST);
+	}
+
+	/**
+	 * This method adds the thresh(), detect() and outputResults() cases of an image
+	 *
+	 * @param cases gets the cases
+	 * @param input the image
+	 * @throws IOException if the files of outputResults() cannot be created
+	 */
+	private static void addImageCases(ArrayList<Case> cases, final Input input) throws IOException {
+		cases.add(new Case("thresh " + input.name) {
+			private BufferedImage image; // read on the first run, a JMH fork only reads the image it needs
+			private BufferedImage copy;
+
+			public void prepare() throws IOException {
+				if (image == null) {
+					image = new Detector(input.file, input.color, input.okDist).img;
+					if (image == null) {
+						throw new IOException("! Error: Failed to read " + input.file);
+					}
+				}
+				copy = new BufferedImage(image.getColorModel(), image.copyData(null), false, null);
+			}
+
+			public Object run() {
+				Detector.thresh(copy, input.color, input.okDist);
+				return copy;
+			}
+
+			public void release() {
+				copy = null;
+			}
+		});
+
+		for (final Detector.Mode mode : Detector.Mode.values()) {
+			cases.add(new Case("detect " + mode.name().toLowerCase() + " " + input.name) {
+				private Detector detector;
+
+				public void prepare() {
+					detector = null;
+					detector = new Detector(input.file, input.color, input.okDist);
+					detector.setMode(mode);
+				}
+
+				public Object run() {
+					detector.detect();
+					return detector;
+				}
+
+				public void release() {
+					detector = null;
+				}
+			});
+		}
+
+		final File output = File.createTempFile("blob-bench", ".raw");
+		output.deleteOnExit();
+		final File outputEC = File.createTempFile("blob-bench-ec", ".raw");
+		outputEC.deleteOnExit();
+		for (final int k : new int[] { 1, 100 }) {
+			cases.add(new Case("outputResults k=" + k + " " + input.name) {
+				private Detector detector;
+
+				public void prepare() {
+					detector = null;
+					detector = new Detector(input.file, input.color, input.okDist);
+					detector.setMode(Detector.Mode.TWO_PASS);
+					detector.setOutput(NOWHERE);
+					detector.detect();
+				}
+
+				public Object run() {
+					detector.outputResults(output.getPath(), outputEC.getPath(), k);
+					return detector;
+				}
+
+				public void release() {
+					detector = null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * This method adds the DisjointSets cases: the same DS_SIZE elements unioned into one
+	 * set in different orders, with every link policy. The raster order unions every
+	 * element of a square grid with its left and upper neighbors, like detect() does
+	 *
+	 * @param cases gets the cases
+	 */
+	private static void addDisjointSetsCases(ArrayList<Case> cases) {
+		final ArrayList<Integer> data = new ArrayList<>();
+		for (int i = 0; i < DS_SIZE; i++) {
+			data.add(i);
+		}
+		final int[] shuffled = new int[DS_SIZE];
+		for (int i = 0; i < DS_SIZE; i++) {
+			shuffled[i] = i;
+		}
+		Random random = new Random(DS_SIZE);
+		for (int i = DS_SIZE - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = temp;
+		}
+
+		final int side = (int) Math.sqrt(DS_SIZE);
+
+		for (final String order : new String[] { "sequential", "reverse", "random", "pairwise", "raster" }) {
+			for (final DisjointSets.LinkPolicy policy : DisjointSets.LinkPolicy.values()) {
+				for (final boolean lazy : new boolean[] { false, true }) {
+					String name = "DisjointSets " + order + " " + policy.name().toLowerCase() + (lazy ? " lazy" : "");
+					cases.add(new Case(name) {
+						private DisjointSets<Integer> ds;
+
+						public void prepare() {
+							ds = null;
+							ds = new DisjointSets<>(data, lazy, policy);
+						}
+
+						public Object run() {
+							if (order.equals("sequential")) {
+								for (int i = 1; i < DS_SIZE; i++) {
+									ds.union(ds.find(i - 1), ds.find(i));
+								}
+							} else if (order.equals("reverse")) {
+								for (int i = DS_SIZE - 1; i > 0; i--) {
+									ds.union(ds.find(i), ds.find(i - 1));
+								}
+							} else if (order.equals("random")) {
+								for (int i = 1; i < DS_SIZE; i++) {
+									int root1 = ds.find(shuffled[i - 1]);
+									int root2 = ds.find(shuffled[i]);
+									if (root1 != root2) {
+										ds.union(root1, root2);
+									}
+								}
+							} else if (order.equals("raster")) {
+								for (int y = 0; y < side; y++) {
+									for (int x = 0; x < side; x++) {
+										int id = y * side + x;
+										if (x > 0) {
+											int root1 = ds.find(id);
+											int root2 = ds.find(id - 1);
+											if (root1 != root2) {
+												ds.union(root1, root2);
+											}
+										}
+										if (y > 0) {
+											int root1 = ds.find(id);
+											int root2 = ds.find(id - side);
+											if (root1 != root2) {
+												ds.union(root1, root2);
+											}
+										}
+									}
+								}
+							} else {
+								// sets of the same size are unioned, doubling every round
+								for (int step = 1; step < DS_SIZE; step *= 2) {
+									for (int i = 0; i + step < DS_SIZE; i += 2 * step) {
+										ds.union(ds.find(i), ds.find(i + step));
+									}
+								}
+							}
+							for (int i = 0; i < DS_SIZE; i++) {
+								ds.find(i);
+							}
+							return ds;
+						}
+
+						public void release() {
+							ds = null;
+						}
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method adds the Set cases: DS_SIZE elements in sets of different sizes added
+	 * into one set with addAll(), and the elements of one large set iterated, for a set
+	 * built with add() and for the members of a DisjointSets after the raster unions
+	 *
+	 * @param cases gets the cases
+	 */
+	private static void addSetCases(ArrayList<Case> cases) {
+		final Set<Integer> added = new Set<>();
+		for (int i = 0; i < DS_SIZE; i++) {
+			added.add(i);
+		}
+		cases.add(new Case("Set iterate added") {
+			public Object run() {
+				return iterate(added);
+			}
+		});
+		final ArrayList<Integer> data = new ArrayList<>();
+		for (int i = 0; i < DS_SIZE; i++) {
+			data.add(i);
+		}
+		final int side = (int) Math.sqrt(DS_SIZE);
+		for (final boolean lazy : new boolean[] { false, true }) {
+			final DisjointSets<Integer> ds = new DisjointSets<>(data, lazy);
+			for (int y = 0; y < side; y++) {
+				for (int x = 0; x < side; x++) {
+					if (x > 0) {
+						ds.union(ds.find(y * side + x), ds.find(y * side + x - 1));
+					}
+					if (y > 0 && ds.find(y * side + x) != ds.find(y * side + x - side)) {
+						ds.union(ds.find(y * side + x), ds.find(y * side + x - side));
+					}
+				}
+			}
+			cases.add(new Case("Set iterate DisjointSets raster" + (lazy ? " lazy" : "")) {
+				public Object run() {
+					return iterate(ds.get(ds.find(0)));
+				}
+			});
+		}
+
+		for (final int setSize : new int[] { 1, 64, DS_SIZE / 2 }) {
+			cases.add(new Case("Set.addAll sets of " + setSize) {
+				private ArrayList<Set<Integer>> sets;
+
+				public void prepare() {
+					sets = null;
+					sets = new ArrayList<>();
+					for (int i = 0; i < DS_SIZE; i += setSize) {
+						Set<Integer> set = new Set<>();
+						for (int j = i; j < i + setSize; j++) {
+							set.add(j);
+						}
+						sets.add(set);
+					}
+				}
+
+				public Object run() {
+					Set<Integer> all = sets.get(0);
+					for (int i = 1; i < sets.size(); i++) {
+						all.addAll(sets.get(i));
+					}
+					if (all.size() != DS_SIZE) {
+						throw new IllegalStateException("! Error: the set has " + all.size() + " elements");
+					}
+					return all;
+				}
+
+				public void release() {
+					sets = null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * This method walks all the elements of a set, like outputResults() does
+	 *
+	 * @param set the set, with the side * side elements of the DisjointSets cases
+	 * @return the sum of the elements
+	 */
+	private static long iterate(Set<Integer> set) {
+		long sum = 0;
+		for (int item : set) {
+			sum += item;
+		}
+		if (sum != (long) DS_SIZE * (DS_SIZE - 1) / 2) {
+			throw new IllegalStateException("! Error: the set adds up to " + sum);
+		}
+		return sum;
+	}
+}
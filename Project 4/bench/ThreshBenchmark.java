@@ -0,0 +1,58 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Times thresholding the pixels of the sample images, comparing the per-pixel
+ * matches() loop with the branch-free ColorMatcher.threshold() kernel.
+ *
+ * Run from the project folder with the compiled src and bench classes on the
+ * classpath: java ThreshBenchmark [rounds]
+ *
+ */
+public class ThreshBenchmark {
+	private static final String[] IMAGES = { "09_Lego_Color_Bricks.jpg", "15_Amish_Dolls.jpg" };
+	private static final Color COLOR = new Color(255, 117, 24); // pumpkin
+	private static final int OK_DIST = 33;
+
+	public static void main(String[] args) throws IOException {
+		int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+		ColorMatcher matcher = new ColorMatcher(COLOR, OK_DIST);
+		int black = Color.BLACK.getRGB();
+		int white = Color.WHITE.getRGB();
+		for (String name : IMAGES) {
+			BufferedImage image = ImageIO.read(new File(name));
+			int width = image.getWidth();
+			int height = image.getHeight();
+			int[] source = image.getRGB(0, 0, width, height, null, 0, width);
+			int[] scalar = new int[source.length];
+			int[] kernel = new int[source.length];
+
+			long bestScalar = Long.MAX_VALUE;
+			long bestKernel = Long.MAX_VALUE;
+			for (int round = 0; round < rounds; round++) {
+				System.arraycopy(source, 0, scalar, 0, source.length);
+				long start = System.nanoTime();
+				for (int i = 0; i < scalar.length; i++) {
+					scalar[i] = matcher.matches(scalar[i]) ? black : white;
+				}
+				bestScalar = Math.min(bestScalar, System.nanoTime() - start);
+
+				System.arraycopy(source, 0, kernel, 0, source.length);
+				start = System.nanoTime();
+				matcher.threshold(kernel, 0, kernel.length);
+				bestKernel = Math.min(bestKernel, System.nanoTime() - start);
+			}
+			for (int i = 0; i < source.length; i++) {
+				if (scalar[i] != kernel[i]) {
+					throw new IllegalStateException("! Error: " + name + " differs at pixel " + i);
+				}
+			}
+			System.out.printf("%s (%dx%d): matches() %.2f ms, threshold() %.2f ms, %.1fx%n", name, width, height,
+					bestScalar / 1e6, bestKernel / 1e6, (double) bestScalar / bestKernel);
+		}
+	}
+}
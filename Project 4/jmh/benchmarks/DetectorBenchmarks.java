@@ -0,0 +1,177 @@
+package benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cases of DetectorBenchmark as JMH benchmarks: thresh(), detect() in every mode and
+ * the top-k of outputResults() on the sample and the generated images, DisjointSets find
+ * and union in every union order with every link policy, Set.addAll() and iteration.
+ *
+ * JMH does not take benchmarks in the default package, and a package cannot name the
+ * classes of the default package, so every case is set up through
+ * DetectorBenchmark.prepare(), found by reflection, which returns the run to time. The
+ * setup is not timed but runs before every call, so with -prof gc its allocations, like
+ * the copy of the image or the fresh DisjointSets, are counted in gc.alloc.rate.norm.
+ *
+ * Build and run from the project folder, so the sample images are found:
+ * mvn -B -P jmh package
+ * java -jar target/benchmarks.jar -prof gc [regex of the benchmarks] [-p input=noise_1024]
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DetectorBenchmarks {
+
+	/**
+	 * A case of DetectorBenchmark, set up again before every call
+	 */
+	public static abstract class Case {
+		private Method prepare;
+		private Callable<Object> run;
+
+		/**
+		 * @return the name of the case, as printed by DetectorBenchmark
+		 */
+		protected abstract String name();
+
+		@Setup(Level.Trial)
+		public void find() throws ReflectiveOperationException {
+			prepare = Class.forName("DetectorBenchmark").getMethod("prepare", String.class);
+			prepare(); // builds the cases and reads the image before the first iteration
+		}
+
+		@Setup(Level.Invocation)
+		@SuppressWarnings("unchecked")
+		public void prepare() throws ReflectiveOperationException {
+			run = null;
+			run = (Callable<Object>) prepare.invoke(null, name());
+		}
+
+		public Object run() throws Exception {
+			return run.call();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Thresh extends Case {
+		@Param({ "04_Circles", "08_Lego", "09_Lego_Bricks", "checkerboard_256", "noise_256", "giant_256",
+				"checkerboard_512", "noise_512", "giant_512", "checkerboard_1024", "noise_1024", "giant_1024" })
+		public String input;
+
+		protected String name() {
+			return "thresh " + input;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Detect extends Case {
+		@Param({ "disjoint_sets", "primitive", "two_pass", "parallel", "fused", "bitmask", "rle", "segment" })
+		public String mode;
+
+		@Param({ "04_Circles", "08_Lego", "09_Lego_Bricks", "checkerboard_256", "noise_256", "giant_256",
+				"checkerboard_512", "noise_512", "giant_512", "checkerboard_1024", "noise_1024", "giant_1024" })
+		public String input;
+
+		protected String name() {
+			return "detect " + mode + " " + input;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class OutputResults extends Case {
+		@Param({ "1", "100" })
+		public int k;
+
+		@Param({ "04_Circles", "08_Lego", "09_Lego_Bricks", "checkerboard_256", "noise_256", "giant_256",
+				"checkerboard_512", "noise_512", "giant_512", "checkerboard_1024", "noise_1024", "giant_1024" })
+		public String input;
+
+		protected String name() {
+			return "outputResults k=" + k + " " + input;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Unions extends Case {
+		@Param({ "sequential", "reverse", "random", "pairwise", "raster" })
+		public String order;
+
+		@Param({ "size", "rank", "random" })
+		public String policy;
+
+		@Param({ "false", "true" })
+		public boolean lazy;
+
+		protected String name() {
+			return "DisjointSets " + order + " " + policy + (lazy ? " lazy" : "");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Iterate extends Case {
+		@Param({ "added", "DisjointSets raster", "DisjointSets raster lazy" })
+		public String set;
+
+		protected String name() {
+			return "Set iterate " + set;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class AddAll extends Case {
+		@Param({ "1", "64", "131072" })
+		public int setSize;
+
+		protected String name() {
+			return "Set.addAll sets of " + setSize;
+		}
+	}
+
+	@Benchmark
+	public Object thresh(Thresh c) throws Exception {
+		return c.run();
+	}
+
+	@Benchmark
+	public Object detect(Detect c) throws Exception {
+		return c.run();
+	}
+
+	@Benchmark
+	public Object outputResults(OutputResults c) throws Exception {
+		return c.run();
+	}
+
+	@Benchmark
+	public Object disjointSets(Unions c) throws Exception {
+		return c.run();
+	}
+
+	@Benchmark
+	public Object setIterate(Iterate c) throws Exception {
+		return c.run();
+	}
+
+	@Benchmark
+	public Object setAddAll(AddAll c) throws Exception {
+		return c.run();
+	}
+}
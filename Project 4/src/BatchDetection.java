@@ -0,0 +1,293 @@
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Runs the detection of BlobDetection on many images in one JVM, on a fixed pool of
+ * worker threads.
+ *
+ * This is a plain pool, not a pipeline: every worker reads, detects and writes one image
+ * from start to end, so the stages only overlap across images, and only as many images
+ * as there are workers are in memory at once. The results are written to the same
+ * _blob.png and _blob_ec.png names as a single image, and the printed lines of every
+ * image, the saved files included, are kept together and printed in the order of the images.
+ *
+ */
+public class BatchDetection {
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which "still counts" as the color
+	private int k; // the number of blobs to output
+	private Detector.Mode mode = Detector.Mode.DISJOINT_SETS; // the labeling engine of every Detector
+	private boolean lazySets; // see Detector.setLazySets()
+	private DisjointSets.LinkPolicy linkPolicy = DisjointSets.LinkPolicy.SIZE; // see Detector.setLinkPolicy()
+	private boolean details; // whether to print the blob details of every image
+	private int minArea; // see Detector.setMinArea()
+	private int colorTableBits; // see Detector.setColorTableBits()
+	private int threads = Runtime.getRuntime().availableProcessors(); // the number of workers
+	private DetectionMetrics metrics; // shared by every Detector, or null
+
+	// the results of BlobDetection, one color or one of the colors of -color
+	private static final Pattern RESULT = Pattern.compile(".*_blob(_c[0-9]+)?(_ec)?\\.(png|raw)");
+
+	/**
+	 * Initialize the batch
+	 * @param blobColor the color to be detected
+	 * @param okDist the acceptable difference between the given color and a pixel color
+	 * @param k the number of blobs to output for every image
+	 */
+	public BatchDetection(Color blobColor, int okDist, int k) {
+		if (blobColor != null && okDist >= 0 && k >= 1) {
+			this.blobColor = blobColor;
+			this.okDist = okDist;
+			this.k = k;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * this method selects the labeling engine of every Detector
+	 * @param mode the labeling engine
+	 */
+	public void setMode(Detector.Mode mode) {
+		if (mode != null) {
+			this.mode = mode;
+		} else {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * @param lazySets see Detector.setLazySets()
+	 */
+	public void setLazySets(boolean lazySets) {
+		this.lazySets = lazySets;
+	}
+
+	/**
+	 * @param linkPolicy see Detector.setLinkPolicy()
+	 */
+	public void setLinkPolicy(DisjointSets.LinkPolicy linkPolicy) {
+		if (linkPolicy != null) {
+			this.linkPolicy = linkPolicy;
+		} else {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * @param details true to print the bounding box, centroid and mean color of every blob
+	 */
+	public void setDetails(boolean details) {
+		this.details = details;
+	}
+
+	/**
+	 * @param minArea see Detector.setMinArea()
+	 */
+	public void setMinArea(int minArea) {
+		this.minArea = minArea;
+	}
+
+	/**
+	 * @param colorTableBits see Detector.setColorTableBits()
+	 */
+	public void setColorTableBits(int colorTableBits) {
+		this.colorTableBits = colorTableBits;
+	}
+
+	/**
+	 * @param metrics see Detector.setMetrics(), shared by all the images so it has to be thread safe
+	 */
+	public void setMetrics(DetectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * this method sets the number of images worked on at the same time
+	 * @param threads the number of workers, at least 1
+	 */
+	public void setThreads(int threads) {
+		if (threads >= 1) {
+			this.threads = threads;
+		} else {
+			throw new IllegalArgumentException(new String("! Error: threads should be greater than 0, current threads=" + threads));
+		}
+	}
+
+	/**
+	 * This method finds the images to work on. The source is a directory, in which case all
+	 * the images in it are used; a glob like frames/*.png, where only the last part of the
+	 * path may have wildcards; or a text file that lists one image per line. Results of
+	 * an earlier run, the _blob.png and _blob_ec.png files and the _blob_ci.png and
+	 * _blob_ci_ec.png files of -color, are left out of directories and globs
+	 *
+	 * @param source the directory, glob or list file
+	 * @return the image files, sorted by name for a directory or glob
+	 * @throws IOException if the source cannot be read
+	 */
+	public static List<String> findImages(String source) throws IOException {
+		List<String> files = new ArrayList<>();
+		File file = new File(source);
+		if (file.isDirectory() || isGlob(source)) {
+			File directory = file;
+			PathMatcher matcher = null;
+			if (!file.isDirectory()) {
+				Path path = Paths.get(source);
+				directory = (path.getParent() != null) ? path.getParent().toFile() : new File(".");
+				matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+			}
+			List<String> suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+			File[] children = directory.listFiles();
+			if (children == null) {
+				throw new IOException("! Error: Failed to list " + directory);
+			}
+			for (File child : children) {
+				String name = child.getName();
+				int dot = name.lastIndexOf('.');
+				if (!child.isFile() || dot < 0 || RESULT.matcher(name).matches()) {
+					continue;
+				}
+				if (matcher != null && !matcher.matches(Paths.get(name))) {
+					continue;
+				}
+				String suffix = name.substring(dot + 1).toLowerCase();
+				if (suffixes.contains(suffix) || RawRaster.isRawRaster(name)) {
+					files.add(child.getPath());
+				}
+			}
+			Collections.sort(files);
+		} else {
+			try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#")) {
+						files.add(line);
+					}
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @param source a file name
+	 * @return true if the name has glob wildcards
+	 */
+	private static boolean isGlob(String source) {
+		for (char c : "*?[{".toCharArray()) {
+			if (source.indexOf(c) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This method detects the blobs of every image and prints them, image by image
+	 *
+	 * @param files the image files
+	 * @param out the stream to print to
+	 * @return the number of images that failed
+	 */
+	public int run(List<String> files, PrintStream out) {
+		// every worker reads its own files, the disk cache of ImageIO only slows that down
+		ImageIO.setUseCache(false);
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (final String file : files) {
+				results.add(pool.submit(new Callable<String>() {
+					public String call() {
+						return detect(file);
+					}
+				}));
+			}
+			int failed = 0;
+			for (int i = 0; i < files.size(); i++) {
+				out.println("== " + files.get(i));
+				try {
+					String result = results.get(i).get();
+					if (result.startsWith("! Error")) {
+						failed++;
+					}
+					out.print(result);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					out.println("! Error: interrupted");
+					return failed + files.size() - i;
+				} catch (ExecutionException e) {
+					failed++;
+					out.println("! Error: " + e.getCause());
+				}
+			}
+			return failed;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * This method does the work of BlobDetection for one image
+	 *
+	 * @param file the image file
+	 * @return what BlobDetection would have printed
+	 */
+	private String detect(String file) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buffer, true);
+		int dot = file.lastIndexOf('.');
+		if (dot < 0) {
+			return "! Error: " + file + " has no file extension\n";
+		}
+		long start = System.nanoTime();
+		Detector detector = new Detector(file, this.blobColor, this.okDist);
+		if (this.metrics != null) {
+			this.metrics.phase("decode", System.nanoTime() - start);
+		}
+		if (detector.img == null) {
+			return "! Error: Failed to read " + file + "\n";
+		}
+		try {
+			detector.setMode(this.mode);
+			detector.setLazySets(this.lazySets);
+			detector.setLinkPolicy(this.linkPolicy);
+			detector.setKeepBlobStats(this.details);
+			detector.setMinArea(this.minArea);
+			detector.setColorTableBits(this.colorTableBits);
+			detector.setOutput(out);
+			detector.setMetrics(this.metrics);
+			detector.detect();
+			String namePart = file.substring(0, dot);
+			detector.outputResults(namePart + "_blob.png", namePart + "_blob_ec.png", this.k);
+			if (this.details) {
+				detector.printBlobDetails(out);
+			}
+		} catch (RuntimeException e) {
+			return "! Error: " + e + "\n";
+		}
+		out.flush();
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,252 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Labels a thresholded image that is stored as a bit-plane, one bit per pixel, with a
+ * run-based version of the two-pass algorithm.
+ *
+ * Every row of the bit-plane starts on a new long word, so word w of row y holds the
+ * pixels 64 * w to 64 * w + 63 of that row, the lowest bit first. A row is cut into runs
+ * of set bits a word at a time: a word without set bits skips 64 background pixels at
+ * once, and the start and end of a run are found with Long.numberOfTrailingZeros().
+ * A run gets the provisional label of the runs of the row above that it overlaps, and
+ * records in an equivalence table when they disagree, so the cost goes with the number
+ * of runs instead of the number of pixels.
+ *
+ * The result uses the same encoding as TwoPassLabeler: the root of a blob is its first
+ * pixel in raster order, every other pixel of the blob points straight at it, and the
+ * background pixels are left as single roots.
+ *
+ */
+public class BitmaskLabeler {
+	/**
+	 * This method labels the set bits of a bit-plane
+	 *
+	 * @param mask the bit-plane, see ColorMatcher.mask()
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the union-find forest of the pixels, fully compressed
+	 */
+	public static int[] label(long[] mask, int width, int height) {
+		int wordsPerRow = (width + 63) >>> 6;
+		if (mask != null && width >= 0 && height >= 0 && mask.length >= wordsPerRow * height) {
+			int maxRuns = (width + 1) / 2;
+			int[] aboveStarts = new int[maxRuns];
+			int[] aboveEnds = new int[maxRuns];
+			int[] aboveLabels = new int[maxRuns];
+			int aboveCount = 0;
+			int[] starts = new int[maxRuns];
+			int[] ends = new int[maxRuns];
+			int[] labels = new int[maxRuns];
+
+			// every run of the image, in raster order
+			int[] runStarts = new int[64];
+			int[] runLengths = new int[64];
+			int[] runLabels = new int[64];
+			int runCount = 0;
+			int[] equivalences = new int[64];
+			int nextLabel = 1;
+
+			for (int y = 0; y < height; y++) {
+				int count = rowRuns(mask, y * wordsPerRow, wordsPerRow, width, starts, ends);
+				int first = 0; // the first run above that can still overlap
+				for (int r = 0; r < count; r++) {
+					while (first < aboveCount && aboveEnds[first] <= starts[r]) {
+						first++;
+					}
+					int label = 0;
+					int next = first;
+					while (next < aboveCount && aboveStarts[next] < ends[r]) {
+						if (label == 0) {
+							label = aboveLabels[next];
+						} else if (label != aboveLabels[next]) {
+							label = TwoPassLabeler.merge(equivalences, label, aboveLabels[next]);
+						}
+						next++;
+					}
+					// the last run above that overlaps can overlap the next run as well
+					if (next > first) {
+						first = next - 1;
+					}
+					if (label == 0) {
+						if (nextLabel == equivalences.length) {
+							equivalences = Arrays.copyOf(equivalences, equivalences.length * 2);
+						}
+						equivalences[nextLabel] = nextLabel;
+						label = nextLabel++;
+					}
+					labels[r] = label;
+
+					if (runCount == runStarts.length) {
+						runStarts = Arrays.copyOf(runStarts, runCount * 2);
+						runLengths = Arrays.copyOf(runLengths, runCount * 2);
+						runLabels = Arrays.copyOf(runLabels, runCount * 2);
+					}
+					runStarts[runCount] = y * width + starts[r];
+					runLengths[runCount] = ends[r] - starts[r];
+					runLabels[runCount] = label;
+					runCount++;
+				}
+
+				// this row becomes the row above
+				int[] temp = aboveStarts;
+				aboveStarts = starts;
+				starts = temp;
+				temp = aboveEnds;
+				aboveEnds = ends;
+				ends = temp;
+				temp = aboveLabels;
+				aboveLabels = labels;
+				labels = temp;
+				aboveCount = count;
+			}
+
+			// resolve the table; links always point to a smaller label so one sweep is enough
+			for (int l = 1; l < nextLabel; l++) {
+				equivalences[l] = equivalences[equivalences[l]];
+			}
+
+			// the root of a blob is the start of its first run, and its entry counts the pixels
+			int[] forest = new int[width * height];
+			Arrays.fill(forest, -1);
+			int[] rootOf = new int[nextLabel];
+			Arrays.fill(rootOf, -1);
+			for (int i = 0; i < runCount; i++) {
+				int blob = equivalences[runLabels[i]];
+				int start = runStarts[i];
+				int end = start + runLengths[i];
+				if (rootOf[blob] < 0) {
+					rootOf[blob] = start;
+					start++;
+				}
+				int root = rootOf[blob];
+				Arrays.fill(forest, start, end, root);
+				forest[root] -= end - start;
+			}
+			return forest;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method writes a bit-plane back into a thresholded image, black for the set bits
+	 * and white for the others, so it can be output like the other modes
+	 *
+	 * @param mask the bit-plane, see ColorMatcher.mask()
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param pixels the image as packed RGB values, one row after another
+	 */
+	public static void paint(long[] mask, int width, int height, int[] pixels) {
+		int wordsPerRow = (width + 63) >>> 6;
+		if (mask != null && pixels != null && width >= 0 && height >= 0 && mask.length >= wordsPerRow * height
+				&& pixels.length >= width * height) {
+			int black = Color.BLACK.getRGB();
+			int white = Color.WHITE.getRGB();
+			int[] starts = new int[(width + 1) / 2];
+			int[] ends = new int[(width + 1) / 2];
+			Arrays.fill(pixels, 0, width * height, white);
+			for (int y = 0; y < height; y++) {
+				int count = rowRuns(mask, y * wordsPerRow, wordsPerRow, width, starts, ends);
+				for (int r = 0; r < count; r++) {
+					Arrays.fill(pixels, y * width + starts[r], y * width + ends[r], black);
+				}
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method cuts a row of a bit-plane into runs of set bits
+	 *
+	 * @param mask the bit-plane
+	 * @param base the index of the first word of the row
+	 * @param wordsPerRow the number of words of a row
+	 * @param width the width of the image
+	 * @param starts gets the x of the first pixel of every run
+	 * @param ends gets the x after the last pixel of every run
+	 * @return the number of runs
+	 */
+	static int rowRuns(long[] mask, int base, int wordsPerRow, int width, int[] starts, int[] ends) {
+		int count = 0;
+		int w = 0;
+		long word = (wordsPerRow > 0) ? mask[base] : 0;
+		while (true) {
+			// skip the words without set bits
+			while (word == 0) {
+				if (++w >= wordsPerRow) {
+					return count;
+				}
+				word = mask[base + w];
+			}
+			int start = (w << 6) + Long.numberOfTrailingZeros(word);
+			// the run ends at the first clear bit after its start, which can be words later
+			long gaps = ~word & (-1L << start);
+			while (gaps == 0) {
+				if (++w == wordsPerRow) {
+					starts[count] = start;
+					ends[count] = width;
+					return count + 1;
+				}
+				gaps = ~mask[base + w];
+			}
+			int end = (w << 6) + Long.numberOfTrailingZeros(gaps);
+			starts[count] = start;
+			ends[count] = end;
+			count++;
+			word = mask[base + w] & (-1L << end);
+		}
+	}
+
+	// main method just for testing: compares the forest with TwoPassLabeler on random images
+	public static void main(String[] args) {
+		int black = Color.BLACK.getRGB();
+		int white = Color.WHITE.getRGB();
+		ColorMatcher matcher = new ColorMatcher(Color.BLACK, 0);
+		// widths around the word size, and 1 pixel wide images
+		int[] widths = { 1, 2, 5, 63, 64, 65, 127, 128, 129, 200 };
+		int[] heights = { 1, 2, 7, 64, 100 };
+		double[] densities = { 0, 0.1, 0.5, 0.9, 1 };
+		Random random = new Random(42);
+		int images = 0;
+		for (int width : widths) {
+			for (int height : heights) {
+				for (double density : densities) {
+					for (int round = 0; round < 3; round++) {
+						int[] pixels = new int[width * height];
+						for (int i = 0; i < pixels.length; i++) {
+							pixels[i] = (random.nextDouble() < density) ? black : white;
+						}
+						if (round == 2 && width > 2) {
+							// long runs that start and end in different words, with a gap between rows
+							for (int y = 0; y < height; y += 2) {
+								int start = random.nextInt(width / 2);
+								int end = width / 2 + random.nextInt(width - width / 2 + 1);
+								Arrays.fill(pixels, y * width, (y + 1) * width, white);
+								Arrays.fill(pixels, y * width + start, y * width + end, black);
+							}
+						}
+						long[] mask = matcher.mask(pixels, width, height);
+						int[] expected = TwoPassLabeler.label(pixels.clone(), width, height);
+						int[] forest = label(mask, width, height);
+						if (!Arrays.equals(forest, expected)) {
+							throw new IllegalStateException("! Error: the forests differ for " + width + "x" + height
+									+ " at density " + density + " in round " + round);
+						}
+						int[] painted = new int[width * height];
+						paint(mask, width, height, painted);
+						if (!Arrays.equals(painted, pixels)) {
+							throw new IllegalStateException("! Error: the painted image differs for " + width + "x"
+									+ height + " at density " + density + " in round " + round);
+						}
+						images++;
+					}
+				}
+			}
+		}
+		System.out.println(images + " images, same forest as TwoPassLabeler");
+	}
+}
@@ -2,8 +2,12 @@
 // !!! Do NOT Change anything in this file
 //
 
+import javax.management.JMException;
 import javax.swing.JFrame;
 import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BlobDetection
 {
@@ -11,8 +15,8 @@ public class BlobDetection
     {
         if(args.length<1)
         {
-            System.err.println("Usage: BlobDetection image_file -k K -r red_value -g green_value -b blue_value -d distance [-o image_file_output] [-show]"+
-				"\n\timage_file: *.jpg, *.png, etc\n\tK: number of blobs\n\tred_value, green_value, blue_value: 0-255\n\tdistance: the acceptable distance between the color and a pixel\n\timage_file_output: the file to write out to\n\tshow: display image before ending program");
+            System.err.println("Usage: BlobDetection image_file -k K -r red_value -g green_value -b blue_value -d distance [-o image_file_output] [-mode mode] [-lazy] [-link policy] [-details] [-minArea area] [-lut bits] [-stream] [-labels label_file] [-batch] [-threads threads] [-track] [-color red,green,blue,distance]... [-stats] [-show]"+
+				"\n\timage_file: *.jpg, *.png, etc, or *.raw for a raw raster\n\tK: number of blobs\n\tred_value, green_value, blue_value: 0-255\n\tdistance: the acceptable distance between the color and a pixel\n\timage_file_output: the file to write out to, *.raw for a raw raster\n\tmode: disjoint_sets (default), primitive, two_pass, parallel, fused, bitmask, rle or segment, which labels every region of similar colors instead of one color and ignores -r -g -b\n\tlazy: build the pixel or run sets of the disjoint_sets and rle modes on demand\n\tpolicy: how the disjoint_sets and rle modes link two sets, size (default), rank or random\n\tdetails: also print the bounding box, centroid and mean color of every blob\n\tarea: ignore blobs with fewer pixels than this\n\tbits: threshold through a 5 or 6 bits per channel color table\n\tstream: read the image a band at a time and only print the blobs, for images larger than memory\n\tlabel_file: write the blob of every pixel to this raw raster file\n\tbatch: image_file is a directory, a glob like frames/*.png or a file listing one image per line, and every image gets its own _blob.png and _blob_ec.png\n\tthreads: the number of images worked on at once in batch mode, the number of processors by default\n\ttrack: image_file lists the frames of a fixed camera like in batch mode, only the changes between frames are labeled again and every blob keeps its id from frame to frame\n\tcolor: detect this color instead of -r -g -b -d, give it several times to detect all of them in one bitmask scan, which takes no -mode, -lazy or -link, color i is written to _blob_ci.png and _blob_ci_ec.png\n\tstats: print the time of every phase and the pixel, union, find and blob counts, the depth of the forest and the find path lengths as a JSON line at the end, and publish them through JMX as "+DetectionStats.OBJECT_NAME+"\n\tshow: display image before ending program");
             return;
         }
 
@@ -24,6 +28,22 @@ public class BlobDetection
         String img_name="";
         String img_out_name=null;
         boolean show_img=false;
+        Detector.Mode mode=Detector.Mode.DISJOINT_SETS;
+        boolean mode_given=false;
+        boolean lazy_sets=false;
+        DisjointSets.LinkPolicy link_policy=DisjointSets.LinkPolicy.SIZE;
+        boolean link_given=false;
+        boolean details=false;
+        int min_area=0;
+        int lut_bits=0;
+        boolean stream=false;
+        String labels_name=null;
+        boolean batch=false;
+        int threads=0;
+        boolean track=false;
+        boolean stats=false;
+        List<Color> colors=new ArrayList<>();
+        List<Integer> distances=new ArrayList<>();
 
 		for(int i=0;i<args.length;i++) {
 			if(args[i].toLowerCase().compareTo("-k")==0) k=Integer.parseInt(args[++i]);
@@ -32,11 +52,163 @@ public class BlobDetection
 			else if(args[i].toLowerCase().compareTo("-b")==0) b=Integer.parseInt(args[++i]);
 			else if(args[i].toLowerCase().compareTo("-d")==0) d=Integer.parseInt(args[++i]);
 			else if(args[i].toLowerCase().compareTo("-o")==0) img_out_name=args[++i];
+			else if(args[i].toLowerCase().compareTo("-mode")==0) {
+				mode=Detector.Mode.valueOf(args[++i].toUpperCase());
+				mode_given=true;
+			}
+			else if(args[i].toLowerCase().compareTo("-lazy")==0) lazy_sets=true;
+			else if(args[i].toLowerCase().compareTo("-link")==0) {
+				link_policy=DisjointSets.LinkPolicy.valueOf(args[++i].toUpperCase());
+				link_given=true;
+			}
+			else if(args[i].toLowerCase().compareTo("-details")==0) details=true;
+			else if(args[i].toLowerCase().compareTo("-minarea")==0) min_area=Integer.parseInt(args[++i]);
+			else if(args[i].toLowerCase().compareTo("-lut")==0) lut_bits=Integer.parseInt(args[++i]);
+			else if(args[i].toLowerCase().compareTo("-stream")==0) stream=true;
+			else if(args[i].toLowerCase().compareTo("-labels")==0) labels_name=args[++i];
+			else if(args[i].toLowerCase().compareTo("-batch")==0) batch=true;
+			else if(args[i].toLowerCase().compareTo("-threads")==0) threads=Integer.parseInt(args[++i]);
+			else if(args[i].toLowerCase().compareTo("-track")==0) track=true;
+			else if(args[i].toLowerCase().compareTo("-stats")==0) stats=true;
+			else if(args[i].toLowerCase().compareTo("-color")==0) {
+				String[] parts=args[++i].split(",");
+				if(parts.length!=4) {
+					System.err.println("! Error: -color needs red,green,blue,distance, current value="+args[i]);
+					return;
+				}
+				colors.add(new Color(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim())));
+				distances.add(Integer.parseInt(parts[3].trim()));
+			}
 			else if(args[i].toLowerCase().compareTo("-show")==0) show_img=true;
 			else img_name=args[i];
 		}
 
+        DetectionStats detectionStats = null;
+        if(stats) {
+            if(track || stream || !colors.isEmpty()) {
+                System.err.println("! Error: -stats works with a single image or -batch, not with -track, -stream or -color");
+                return;
+            }
+            detectionStats = new DetectionStats();
+            try {
+                detectionStats.register();
+            } catch (JMException e) {
+                System.err.println("! Error: Failed to register " + DetectionStats.OBJECT_NAME + ", error msg: " + e);
+            }
+        }
+
+        if(track) {
+            if(batch || img_out_name != null || labels_name != null || stream || show_img || !colors.isEmpty()) {
+                System.err.println("! Error: -batch, -o, -labels, -stream, -show and -color do not work with -track");
+                return;
+            }
+            List<String> files;
+            try {
+                files = BatchDetection.findImages(img_name);
+            } catch (IOException e) {
+                System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+                return;
+            }
+            BlobTracker tracker = new BlobTracker(new Color(r, g, b), d);
+            tracker.setMinArea(min_area);
+            tracker.setColorTableBits(lut_bits);
+            long relabeled = 0;
+            long pixels = 0;
+            for(String file : files) {
+                System.out.println("== " + file);
+                try {
+                    tracker.track(file);
+                } catch (IOException e) {
+                    System.out.println("! Error: Failed to read " + file + ", error msg: " + e);
+                    continue;
+                }
+                tracker.outputResults(k, System.out);
+                if(details) tracker.printBlobDetails(k, System.out);
+                relabeled += tracker.getRelabeledPixels();
+                pixels += tracker.getWidth() * (long) tracker.getHeight();
+            }
+            System.err.println("- Tracked " + files.size() + " frames, labeled " + relabeled + " of " + pixels + " pixels");
+            return;
+        }
+
+        if(!colors.isEmpty()) {
+            if(batch || stream || details || labels_name != null || show_img) {
+                System.err.println("! Error: -batch, -stream, -details, -labels and -show work on a single color, not with -color");
+                return;
+            }
+            if(mode_given || lazy_sets || link_given) {
+                System.err.println("! Error: -mode, -lazy and -link do not work with -color, which always labels with bitmasks");
+                return;
+            }
+            int[] okDists = new int[distances.size()];
+            for(int i=0;i<okDists.length;i++) okDists[i]=distances.get(i);
+            Detector[] detectors = Detector.detectColors(img_name, colors.toArray(new Color[colors.size()]), okDists, lut_bits);
+            if(detectors == null) return;
+            String namePart = (img_out_name == null) ? img_name.substring(0, img_name.lastIndexOf('.'))+"_blob"
+                    : img_out_name.substring(0, img_out_name.lastIndexOf('.'));
+            String extension = RawRaster.isRawRaster(img_out_name) ? ".raw" : ".png";
+            for(int i=0;i<detectors.length;i++) {
+                Color c = colors.get(i);
+                System.out.println("Color "+(i+1)+": ("+c.getRed()+","+c.getGreen()+","+c.getBlue()+") distance "+okDists[i]);
+                detectors[i].setMinArea(min_area);
+                detectors[i].outputResults(namePart+"_c"+(i+1)+extension, namePart+"_c"+(i+1)+"_ec"+extension, k);
+                detectors[i] = null;
+            }
+            return;
+        }
+
+        if(batch) {
+            if(img_out_name != null || labels_name != null || stream || show_img) {
+                System.err.println("! Error: -o, -labels, -stream and -show work on a single image, not with -batch");
+                return;
+            }
+            List<String> files;
+            try {
+                files = BatchDetection.findImages(img_name);
+            } catch (IOException e) {
+                System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+                return;
+            }
+            BatchDetection batchDetection = new BatchDetection(new Color(r, g, b), d, k);
+            batchDetection.setMode(mode);
+            batchDetection.setLazySets(lazy_sets);
+            batchDetection.setLinkPolicy(link_policy);
+            batchDetection.setDetails(details);
+            batchDetection.setMinArea(min_area);
+            batchDetection.setColorTableBits(lut_bits);
+            if(threads > 0) batchDetection.setThreads(threads);
+            batchDetection.setMetrics(detectionStats);
+            int failed = batchDetection.run(files, System.out);
+            if(detectionStats != null) System.out.println(detectionStats.getJson());
+            System.err.println("- Processed " + files.size() + " images, " + failed + " failed");
+            return;
+        }
+
+        if(stream) {
+            StreamingDetector streaming = new StreamingDetector(img_name, new Color(r, g, b), d);
+            streaming.setMinArea(min_area);
+            streaming.setColorTableBits(lut_bits);
+            try {
+                streaming.detect(k);
+            } catch (IOException e) {
+                System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+                return;
+            }
+            streaming.outputResults();
+            if(details) streaming.printBlobDetails(System.out);
+            return;
+        }
+
+        long start = System.nanoTime();
         Detector detector = new Detector(img_name, new Color(r, g, b), d);
+        if(detectionStats != null) detectionStats.phase("decode", System.nanoTime() - start);
+        detector.setMetrics(detectionStats);
+        detector.setMode(mode);
+        detector.setLazySets(lazy_sets);
+        detector.setLinkPolicy(link_policy);
+        detector.setKeepBlobStats(details);
+        detector.setMinArea(min_area);
+        detector.setColorTableBits(lut_bits);
         detector.detect();
 		
 		String img_out_name_ec = null;
@@ -47,11 +219,15 @@ public class BlobDetection
 		}
 		else {
 			String namePart = img_out_name.substring(0, img_out_name.lastIndexOf('.'));
-			img_out_name = namePart+".png";
-			img_out_name_ec = namePart+"_ec.png";
+			String extension = RawRaster.isRawRaster(img_out_name) ? ".raw" : ".png";
+			img_out_name = namePart+extension;
+			img_out_name_ec = namePart+"_ec"+extension;
 		}
 		
         detector.outputResults(img_out_name, img_out_name_ec, k);
+        if(details) detector.printBlobDetails(System.out);
+        if(labels_name != null) detector.saveLabelMap(labels_name);
+        if(detectionStats != null) System.out.println(detectionStats.getJson());
 
         //display the image after segmentation
         if(show_img) {
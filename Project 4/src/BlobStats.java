@@ -0,0 +1,268 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Keeps running statistics for a growing number of blobs: the number of pixels, the
+ * bounding box, the sum of the pixel positions for the centroid and the sum of the
+ * pixel colors for the mean color of each. Blobs are identified by an int, and two
+ * blobs can be merged in constant time when a labeler finds out they are the same blob.
+ *
+ */
+public class BlobStats {
+	private int[] count; // the number of pixels of every blob
+	private int[] minX; // the bounding box of every blob
+	private int[] minY;
+	private int[] maxX;
+	private int[] maxY;
+	private long[] sumX; // the sums of the pixel positions of every blob
+	private long[] sumY;
+	private long[] sumR; // the sums of the pixel colors of every blob
+	private long[] sumG;
+	private long[] sumB;
+
+	/**
+	 * Initialize the statistics
+	 *
+	 * @param capacity the number of blobs to make room for, more are added as needed
+	 */
+	public BlobStats(int capacity) {
+		if (capacity >= 0) {
+			count = new int[capacity];
+			minX = new int[capacity];
+			minY = new int[capacity];
+			maxX = new int[capacity];
+			maxY = new int[capacity];
+			sumX = new long[capacity];
+			sumY = new long[capacity];
+			sumR = new long[capacity];
+			sumG = new long[capacity];
+			sumB = new long[capacity];
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method adds a pixel to a blob
+	 *
+	 * @param blob the blob
+	 * @param x the x of the pixel
+	 * @param y the y of the pixel
+	 * @param rgb the color of the pixel as a packed RGB value
+	 */
+	public void add(int blob, int x, int y, int rgb) {
+		if (blob >= count.length) {
+			grow(blob + 1);
+		}
+		if (count[blob] == 0) {
+			minX[blob] = x;
+			minY[blob] = y;
+			maxX[blob] = x;
+			maxY[blob] = y;
+		} else {
+			if (x < minX[blob]) {
+				minX[blob] = x;
+			}
+			if (x > maxX[blob]) {
+				maxX[blob] = x;
+			}
+			if (y < minY[blob]) {
+				minY[blob] = y;
+			}
+			if (y > maxY[blob]) {
+				maxY[blob] = y;
+			}
+		}
+		count[blob]++;
+		sumX[blob] += x;
+		sumY[blob] += y;
+		sumR[blob] += (rgb >> 16) & 0xFF;
+		sumG[blob] += (rgb >> 8) & 0xFF;
+		sumB[blob] += rgb & 0xFF;
+	}
+
+	/**
+	 * This method adds a horizontal run of pixels to a blob at once
+	 *
+	 * @param blob the blob
+	 * @param x the x of the first pixel of the run
+	 * @param y the y of the run
+	 * @param length the number of pixels of the run, at least 1
+	 * @param pixels the colors of the image as packed RGB values, one row after another,
+	 *            or null to leave the color sums out
+	 * @param width the width of the image
+	 */
+	public void addRun(int blob, int x, int y, int length, int[] pixels, int width) {
+		if (length < 1) {
+			throw new IllegalArgumentException();
+		}
+		if (blob >= count.length) {
+			grow(blob + 1);
+		}
+		int last = x + length - 1;
+		if (count[blob] == 0) {
+			minX[blob] = x;
+			minY[blob] = y;
+			maxX[blob] = last;
+			maxY[blob] = y;
+		} else {
+			minX[blob] = Math.min(minX[blob], x);
+			minY[blob] = Math.min(minY[blob], y);
+			maxX[blob] = Math.max(maxX[blob], last);
+			maxY[blob] = Math.max(maxY[blob], y);
+		}
+		count[blob] += length;
+		sumX[blob] += (long) length * x + (long) length * (length - 1) / 2;
+		sumY[blob] += (long) length * y;
+		if (pixels != null) {
+			for (int i = y * width + x; i <= y * width + last; i++) {
+				sumR[blob] += (pixels[i] >> 16) & 0xFF;
+				sumG[blob] += (pixels[i] >> 8) & 0xFF;
+				sumB[blob] += pixels[i] & 0xFF;
+			}
+		}
+	}
+
+	/**
+	 * This method merges the statistics of one blob into another and empties it
+	 *
+	 * @param into the blob that is kept
+	 * @param from the blob that is merged away
+	 */
+	public void merge(int into, int from) {
+		if (into == from || from >= count.length || count[from] == 0) {
+			return;
+		}
+		if (into >= count.length) {
+			grow(into + 1);
+		}
+		if (count[into] == 0) {
+			minX[into] = minX[from];
+			minY[into] = minY[from];
+			maxX[into] = maxX[from];
+			maxY[into] = maxY[from];
+		} else {
+			minX[into] = Math.min(minX[into], minX[from]);
+			minY[into] = Math.min(minY[into], minY[from]);
+			maxX[into] = Math.max(maxX[into], maxX[from]);
+			maxY[into] = Math.max(maxY[into], maxY[from]);
+		}
+		count[into] += count[from];
+		sumX[into] += sumX[from];
+		sumY[into] += sumY[from];
+		sumR[into] += sumR[from];
+		sumG[into] += sumG[from];
+		sumB[into] += sumB[from];
+		count[from] = 0;
+		sumX[from] = 0;
+		sumY[from] = 0;
+		sumR[from] = 0;
+		sumG[from] = 0;
+		sumB[from] = 0;
+	}
+
+	/**
+	 * This method empties a blob, so its id can be used for a new blob
+	 *
+	 * @param blob the blob
+	 */
+	public void clear(int blob) {
+		if (blob < count.length) {
+			count[blob] = 0;
+			sumX[blob] = 0;
+			sumY[blob] = 0;
+			sumR[blob] = 0;
+			sumG[blob] = 0;
+			sumB[blob] = 0;
+		}
+	}
+
+	/**
+	 * This method gets the number of pixels of a blob
+	 *
+	 * @param blob the blob
+	 * @return the number of pixels
+	 */
+	public int size(int blob) {
+		return (blob < count.length) ? count[blob] : 0;
+	}
+
+	/**
+	 * @param blob the blob
+	 * @return the left of the bounding box
+	 */
+	public int minX(int blob) {
+		return minX[blob];
+	}
+
+	/**
+	 * @param blob the blob
+	 * @return the top of the bounding box
+	 */
+	public int minY(int blob) {
+		return minY[blob];
+	}
+
+	/**
+	 * @param blob the blob
+	 * @return the right of the bounding box
+	 */
+	public int maxX(int blob) {
+		return maxX[blob];
+	}
+
+	/**
+	 * @param blob the blob
+	 * @return the bottom of the bounding box
+	 */
+	public int maxY(int blob) {
+		return maxY[blob];
+	}
+
+	/**
+	 * @param blob the blob
+	 * @return the x of the centroid
+	 */
+	public double centroidX(int blob) {
+		return (double) sumX[blob] / count[blob];
+	}
+
+	/**
+	 * @param blob the blob
+	 * @return the y of the centroid
+	 */
+	public double centroidY(int blob) {
+		return (double) sumY[blob] / count[blob];
+	}
+
+	/**
+	 * This method calculates the mean color of the pixels of a blob, rounded
+	 *
+	 * @param blob the blob
+	 * @return the mean color
+	 */
+	public Color meanColor(int blob) {
+		int n = count[blob];
+		return new Color((int) ((sumR[blob] + n / 2) / n), (int) ((sumG[blob] + n / 2) / n),
+				(int) ((sumB[blob] + n / 2) / n));
+	}
+
+	/**
+	 * This method makes room for more blobs
+	 *
+	 * @param needed the number of blobs needed
+	 */
+	private void grow(int needed) {
+		int capacity = Math.max(needed, count.length * 2);
+		count = Arrays.copyOf(count, capacity);
+		minX = Arrays.copyOf(minX, capacity);
+		minY = Arrays.copyOf(minY, capacity);
+		maxX = Arrays.copyOf(maxX, capacity);
+		maxY = Arrays.copyOf(maxY, capacity);
+		sumX = Arrays.copyOf(sumX, capacity);
+		sumY = Arrays.copyOf(sumY, capacity);
+		sumR = Arrays.copyOf(sumR, capacity);
+		sumG = Arrays.copyOf(sumG, capacity);
+		sumB = Arrays.copyOf(sumB, capacity);
+	}
+}
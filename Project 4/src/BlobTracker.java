@@ -0,0 +1,742 @@
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Tracks the blobs of a color over the frames of a fixed camera, relabeling only the
+ * parts of a frame that changed and keeping the id of a blob from one frame to the next.
+ *
+ * The frame is cut into square tiles. Only the pixels that differ from the previous
+ * frame are thresholded again, and a tile is dirty when one of its pixels went in or out
+ * of the color. Neighboring dirty tiles form a dirty rectangle, which is grown by the
+ * bounding box of every blob that has a pixel in it or next to it until no blob is left
+ * half in and half out. Then no blob can cross the border of the rectangle, so the old
+ * blobs in it are dropped and its pixels are labeled again on their own, while every
+ * other blob is kept as it is. The work for a frame goes with the area of the dirty
+ * rectangles, apart from the compare of the pixels with the previous frame.
+ *
+ * A new blob takes the id of the dropped blob it shares the most pixels with, or whose
+ * centroid is the closest when they share the same number. A blob that shares no pixels
+ * takes the closest dropped blob that had a pixel in its bounding box, and a blob with
+ * neither gets a new id.
+ *
+ */
+public class BlobTracker {
+	/**
+	 * A blob of the current frame: its id, area, bounding box and centroid
+	 */
+	public static class Blob {
+		private int id; // stays the same while the blob is tracked
+		private final int firstPixel; // the id of the first pixel of the blob in raster order
+		private int area;
+		private int minX;
+		private int minY;
+		private int maxX;
+		private int maxY;
+		private long sumX; // the sums of the pixel positions for the centroid
+		private long sumY;
+		private int[] overlapIds; // the dropped blobs the blob shares pixels with or is near, while matching
+		private int[] overlaps; // the pixels shared with every one of overlapIds
+
+		private Blob(int firstPixel, int x, int y) {
+			this.firstPixel = firstPixel;
+			this.minX = x;
+			this.minY = y;
+			this.maxX = x;
+			this.maxY = y;
+		}
+
+		/**
+		 * This method adds a pixel to the blob
+		 * @param x the x of the pixel
+		 * @param y the y of the pixel
+		 */
+		private void add(int x, int y) {
+			this.area++;
+			this.sumX += x;
+			this.sumY += y;
+			this.minX = Math.min(this.minX, x);
+			this.minY = Math.min(this.minY, y);
+			this.maxX = Math.max(this.maxX, x);
+			this.maxY = Math.max(this.maxY, y);
+		}
+
+		/**
+		 * @return the bounding box as a Rectangle
+		 */
+		private Rectangle getBounds() {
+			return new Rectangle(this.minX, this.minY, this.maxX - this.minX + 1, this.maxY - this.minY + 1);
+		}
+
+		/**
+		 * @return the id of the blob, which it keeps from frame to frame
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return the number of pixels of the blob
+		 */
+		public int getArea() {
+			return area;
+		}
+
+		/**
+		 * @return the left of the bounding box
+		 */
+		public int getMinX() {
+			return minX;
+		}
+
+		/**
+		 * @return the top of the bounding box
+		 */
+		public int getMinY() {
+			return minY;
+		}
+
+		/**
+		 * @return the right of the bounding box
+		 */
+		public int getMaxX() {
+			return maxX;
+		}
+
+		/**
+		 * @return the bottom of the bounding box
+		 */
+		public int getMaxY() {
+			return maxY;
+		}
+
+		/**
+		 * @return the x of the centroid
+		 */
+		public double getCentroidX() {
+			return (double) sumX / area;
+		}
+
+		/**
+		 * @return the y of the centroid
+		 */
+		public double getCentroidY() {
+			return (double) sumY / area;
+		}
+	}
+
+	// larger blobs first, and the blob with the smaller id when they are the same size
+	private static final Comparator<Blob> LARGEST_FIRST = new Comparator<Blob>() {
+		public int compare(Blob b1, Blob b2) {
+			if (b1.area != b2.area) {
+				return (b1.area > b2.area) ? -1 : 1;
+			}
+			return Integer.compare(b1.id, b2.id);
+		}
+	};
+
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which "still counts" as the color
+	private int tileSize = 32; // the width and height of a tile
+	private int colorTableBits; // the bits per channel of the ColorMatcher table, 0 for none
+	private int minArea; // blobs with fewer pixels are not reported
+	private ColorMatcher matcher; // the matcher of blobColor, or null until the next frame
+
+	private int width; // the size of the frames
+	private int height;
+	private int[] previous; // the pixels of the previous frame, or null before the first frame
+	private boolean[] foreground; // whether every pixel of the previous frame is of the color
+	private int[] labels; // the id of the blob of every pixel, 0 for the background
+	private HashMap<Integer, Blob> blobs = new HashMap<>(); // the blobs of the previous frame by id
+	private int nextId = 1; // the id of the next new blob
+	private int[] overlapCounts = new int[0]; // the pixels the current new blob shares with every old id, 0 between blobs
+	private int[] touchedIds = new int[16]; // the old ids with a count in overlapCounts
+	private int relabeledPixels; // the number of pixels labeled again for the last frame
+
+	/**
+	 * Initialize the BlobTracker, the first frame is labeled as a whole
+	 * @param blobColor the color to be detected
+	 * @param okDist the acceptable difference between the given color and a pixel color
+	 */
+	public BlobTracker(Color blobColor, int okDist) {
+		if (blobColor != null && okDist >= 0) {
+			this.blobColor = blobColor;
+			this.okDist = okDist;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * this method sets the size of the tiles that are compared with the previous frame, a
+	 * change in a tile relabels at least the whole tile
+	 * @param tileSize the width and height of a tile, at least 1
+	 */
+	public void setTileSize(int tileSize) {
+		if (tileSize >= 1) {
+			this.tileSize = tileSize;
+		} else {
+			throw new IllegalArgumentException(new String("! Error: the tile size should be at least 1, current size=" + tileSize));
+		}
+	}
+
+	/**
+	 * this method makes thresholding use a table over the quantized colors, see ColorMatcher,
+	 * and starts over with the next frame
+	 * @param colorTableBits 5 for a 32K table, 6 for a 256K table, 0 for none
+	 */
+	public void setColorTableBits(int colorTableBits) {
+		if (colorTableBits == 0 || colorTableBits == 5 || colorTableBits == 6) {
+			this.colorTableBits = colorTableBits;
+			this.matcher = null;
+		} else {
+			throw new IllegalArgumentException(new String("! Error: the color table needs 5 or 6 bits, current bits=" + colorTableBits));
+		}
+	}
+
+	/**
+	 * this method drops blobs smaller than the given area from the results, they are still tracked
+	 * @param minArea the smallest number of pixels of a blob that is reported
+	 */
+	public void setMinArea(int minArea) {
+		this.minArea = minArea;
+	}
+
+	/**
+	 * This method reads the next frame and tracks its blobs
+	 *
+	 * @param imgfile the name of the frame
+	 * @throws IOException if the frame cannot be read
+	 */
+	public void track(String imgfile) throws IOException {
+		BufferedImage image = Detector.readImage(imgfile);
+		if (image == null) {
+			throw new IOException("! Error: Failed to read " + imgfile);
+		}
+		track(Detector.packedPixels(image), image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * This method tracks the blobs of the next frame. A frame of another size than the
+	 * previous one starts over, and every blob gets a new id
+	 *
+	 * @param pixels the frame as packed RGB values, one row after another, left unchanged
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 */
+	public void track(int[] pixels, int width, int height) {
+		if (pixels != null && width >= 0 && height >= 0 && pixels.length >= width * height) {
+			boolean first = this.previous == null || this.matcher == null || width != this.width
+					|| height != this.height;
+			if (first) {
+				this.width = width;
+				this.height = height;
+				this.previous = new int[width * height];
+				this.foreground = new boolean[width * height];
+				this.labels = new int[width * height];
+				this.blobs.clear();
+				this.matcher = new ColorMatcher(this.blobColor, this.okDist, this.colorTableBits);
+			}
+			this.relabeledPixels = 0;
+
+			ArrayList<Rectangle> regions = dirtyRegions(pixels, first);
+
+			// the blobs that have a pixel in a region or next to it are labeled again
+			HashSet<Integer> dropped = new HashSet<>();
+			regions = grow(regions, dropped);
+			HashMap<Integer, Blob> oldBlobs = new HashMap<>();
+			for (Integer id : dropped) {
+				oldBlobs.put(id, this.blobs.remove(id));
+			}
+			ArrayList<Blob> newBlobs = new ArrayList<>();
+			for (Rectangle region : regions) {
+				label(region, newBlobs);
+			}
+			match(oldBlobs, newBlobs);
+			for (Rectangle region : regions) {
+				for (int y = region.y; y < region.y + region.height; y++) {
+					for (int i = y * width + region.x; i < y * width + region.x + region.width; i++) {
+						if (this.labels[i] < 0) {
+							this.labels[i] = newBlobs.get(-this.labels[i] - 1).id;
+						}
+					}
+				}
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method thresholds the pixels that differ from the previous frame and groups the
+	 * tiles where a pixel went in or out of the color into rectangles of touching tiles
+	 *
+	 * @param pixels the frame
+	 * @param all true to threshold every pixel, for the first frame
+	 * @return the bounding box of every group of dirty tiles
+	 */
+	private ArrayList<Rectangle> dirtyRegions(int[] pixels, boolean all) {
+		int tilesX = (this.width + this.tileSize - 1) / this.tileSize;
+		int tilesY = (this.height + this.tileSize - 1) / this.tileSize;
+		boolean[] dirty = new boolean[tilesX * tilesY];
+		// row by row through the memory, the tile is only worked out for a pixel that changed
+		for (int y = 0; y < this.height; y++) {
+			int rowStart = y * this.width;
+			for (int i = rowStart; i < rowStart + this.width; i++) {
+				if (all || pixels[i] != this.previous[i]) {
+					this.previous[i] = pixels[i];
+					boolean matches = this.matcher.matches(pixels[i]);
+					if (matches != this.foreground[i]) {
+						this.foreground[i] = matches;
+						dirty[(y / this.tileSize) * tilesX + (i - rowStart) / this.tileSize] = true;
+					}
+				}
+			}
+		}
+
+		// the tiles that touch, corners included, form one region
+		ArrayList<Rectangle> regions = new ArrayList<>();
+		int[] stack = new int[dirty.length];
+		for (int t = 0; t < dirty.length; t++) {
+			if (!dirty[t]) {
+				continue;
+			}
+			dirty[t] = false;
+			int size = 0;
+			stack[size++] = t;
+			int minX = t % tilesX;
+			int maxX = minX;
+			int minY = t / tilesX;
+			int maxY = minY;
+			while (size > 0) {
+				int tile = stack[--size];
+				int tx = tile % tilesX;
+				int ty = tile / tilesX;
+				minX = Math.min(minX, tx);
+				maxX = Math.max(maxX, tx);
+				minY = Math.min(minY, ty);
+				maxY = Math.max(maxY, ty);
+				for (int ny = Math.max(0, ty - 1); ny <= Math.min(tilesY - 1, ty + 1); ny++) {
+					for (int nx = Math.max(0, tx - 1); nx <= Math.min(tilesX - 1, tx + 1); nx++) {
+						if (dirty[ny * tilesX + nx]) {
+							dirty[ny * tilesX + nx] = false;
+							stack[size++] = ny * tilesX + nx;
+						}
+					}
+				}
+			}
+			Rectangle region = new Rectangle(minX * this.tileSize, minY * this.tileSize,
+					(maxX - minX + 1) * this.tileSize, (maxY - minY + 1) * this.tileSize);
+			regions.add(region.intersection(new Rectangle(0, 0, this.width, this.height)));
+		}
+		return regions;
+	}
+
+	/**
+	 * This method grows every region by the bounding box of the blobs that have a pixel in
+	 * it or next to it, and merges the regions that touch, until it does not change anymore
+	 *
+	 * @param regions the dirty regions
+	 * @param dropped gets the ids of the blobs inside the grown regions
+	 * @return the grown regions, no two of them touch
+	 */
+	private ArrayList<Rectangle> grow(ArrayList<Rectangle> regions, HashSet<Integer> dropped) {
+		ArrayList<Rectangle> done = new ArrayList<>();
+		ArrayDeque<Rectangle> pending = new ArrayDeque<>(regions);
+		while (!pending.isEmpty()) {
+			Rectangle region = pending.poll();
+			boolean grown = true;
+			while (grown) {
+				grown = false;
+				Rectangle border = withBorder(region);
+				for (int y = border.y; y < border.y + border.height; y++) {
+					for (int i = y * this.width + border.x; i < y * this.width + border.x + border.width; i++) {
+						int id = this.labels[i];
+						if (id != 0 && dropped.add(id)) {
+							Rectangle bounds = this.blobs.get(id).getBounds();
+							if (!region.contains(bounds)) {
+								region = region.union(bounds);
+								grown = true;
+							}
+						}
+					}
+				}
+			}
+
+			// a region that touches a finished one is merged with it and grown again
+			boolean merged = false;
+			Iterator<Rectangle> it = done.iterator();
+			while (it.hasNext()) {
+				Rectangle other = it.next();
+				if (withBorder(region).intersects(other)) {
+					region = region.union(other);
+					it.remove();
+					merged = true;
+				}
+			}
+			if (merged) {
+				pending.addFirst(region);
+			} else {
+				done.add(region);
+			}
+		}
+		return done;
+	}
+
+	/**
+	 * @param region a rectangle of the frame
+	 * @return the rectangle with the pixels around it, clipped to the frame
+	 */
+	private Rectangle withBorder(Rectangle region) {
+		return new Rectangle(region.x - 1, region.y - 1, region.width + 2, region.height + 2)
+				.intersection(new Rectangle(0, 0, this.width, this.height));
+	}
+
+	/**
+	 * This method labels the pixels of the color in a region, giving the pixels of new blob
+	 * i the label -(i + 1) until match() hands out the ids, and counts the pixels every new
+	 * blob shares with the blobs of the previous frame
+	 *
+	 * @param region the region, no blob crosses its border
+	 * @param newBlobs gets the blobs of the region
+	 */
+	private void label(Rectangle region, ArrayList<Blob> newBlobs) {
+		int endX = region.x + region.width;
+		int endY = region.y + region.height;
+		// the labels of the previous frame, the region is relabeled in place
+		int[] old = new int[region.width * region.height];
+		for (int y = region.y; y < endY; y++) {
+			System.arraycopy(this.labels, y * this.width + region.x, old, (y - region.y) * region.width, region.width);
+			Arrays.fill(this.labels, y * this.width + region.x, y * this.width + endX, 0);
+		}
+		this.relabeledPixels += region.width * region.height;
+		if (this.overlapCounts.length < this.nextId) {
+			this.overlapCounts = new int[Math.max(this.nextId, 2 * this.overlapCounts.length)];
+		}
+
+		int[] stack = new int[16];
+		for (int y = region.y; y < endY; y++) {
+			for (int x = region.x; x < endX; x++) {
+				int start = y * this.width + x;
+				if (!this.foreground[start] || this.labels[start] != 0) {
+					continue;
+				}
+				Blob blob = new Blob(start, x, y);
+				newBlobs.add(blob);
+				int touched = 0;
+				int label = -newBlobs.size();
+				this.labels[start] = label;
+				int size = 0;
+				stack[size++] = start;
+				while (size > 0) {
+					int current = stack[--size];
+					int cx = current % this.width;
+					int cy = current / this.width;
+					blob.add(cx, cy);
+					int id = old[(cy - region.y) * region.width + cx - region.x];
+					if (id != 0 && this.overlapCounts[id]++ == 0) {
+						touched = touch(id, touched);
+					}
+					if (stack.length < size + 4) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					if (cx > region.x && this.foreground[current - 1] && this.labels[current - 1] == 0) {
+						this.labels[current - 1] = label;
+						stack[size++] = current - 1;
+					}
+					if (cx < endX - 1 && this.foreground[current + 1] && this.labels[current + 1] == 0) {
+						this.labels[current + 1] = label;
+						stack[size++] = current + 1;
+					}
+					if (cy > region.y && this.foreground[current - this.width] && this.labels[current - this.width] == 0) {
+						this.labels[current - this.width] = label;
+						stack[size++] = current - this.width;
+					}
+					if (cy < endY - 1 && this.foreground[current + this.width] && this.labels[current + this.width] == 0) {
+						this.labels[current + this.width] = label;
+						stack[size++] = current + this.width;
+					}
+				}
+
+				// a blob that moved off all of its old pixels can still be near one
+				boolean near = touched == 0;
+				if (near) {
+					for (int by = blob.minY; by <= blob.maxY; by++) {
+						for (int bx = blob.minX; bx <= blob.maxX; bx++) {
+							int id = old[(by - region.y) * region.width + bx - region.x];
+							if (id != 0 && this.overlapCounts[id]++ == 0) {
+								touched = touch(id, touched);
+							}
+						}
+					}
+				}
+				blob.overlapIds = Arrays.copyOf(this.touchedIds, touched);
+				blob.overlaps = new int[touched];
+				for (int i = 0; i < touched; i++) {
+					blob.overlaps[i] = near ? 0 : this.overlapCounts[this.touchedIds[i]];
+					this.overlapCounts[this.touchedIds[i]] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method records an old id the current new blob shares pixels with or is near
+	 *
+	 * @param id the old id, counted for the first time
+	 * @param touched the number of ids recorded so far
+	 * @return the number of ids recorded
+	 */
+	private int touch(int id, int touched) {
+		if (touched == this.touchedIds.length) {
+			this.touchedIds = Arrays.copyOf(this.touchedIds, touched * 2);
+		}
+		this.touchedIds[touched] = id;
+		return touched + 1;
+	}
+
+	/**
+	 * This method gives every new blob the id of the dropped blob it shares the most pixels
+	 * with, larger new blobs choosing first, or a new id if it has no dropped blob left
+	 *
+	 * @param oldBlobs the blobs dropped from the dirty regions by id
+	 * @param newBlobs the blobs labeled in the dirty regions
+	 */
+	private void match(HashMap<Integer, Blob> oldBlobs, ArrayList<Blob> newBlobs) {
+		ArrayList<Blob> order = new ArrayList<>(newBlobs);
+		Collections.sort(order, new Comparator<Blob>() {
+			public int compare(Blob b1, Blob b2) {
+				if (b1.area != b2.area) {
+					return (b1.area > b2.area) ? -1 : 1;
+				}
+				return Integer.compare(b1.firstPixel, b2.firstPixel);
+			}
+		});
+		HashSet<Integer> taken = new HashSet<>();
+		for (Blob blob : order) {
+			int best = 0;
+			int bestOverlap = 0;
+			double bestDistance = 0;
+			for (int i = 0; i < blob.overlapIds.length; i++) {
+				int id = blob.overlapIds[i];
+				if (taken.contains(id)) {
+					continue;
+				}
+				Blob old = oldBlobs.get(id);
+				int overlap = blob.overlaps[i];
+				double dx = blob.getCentroidX() - old.getCentroidX();
+				double dy = blob.getCentroidY() - old.getCentroidY();
+				double distance = dx * dx + dy * dy;
+				if (best == 0 || overlap > bestOverlap || (overlap == bestOverlap
+						&& (distance < bestDistance || (distance == bestDistance && id < best)))) {
+					best = id;
+					bestOverlap = overlap;
+					bestDistance = distance;
+				}
+			}
+			if (best != 0) {
+				taken.add(best);
+				blob.id = best;
+			} else {
+				blob.id = this.nextId++;
+			}
+			blob.overlapIds = null;
+			blob.overlaps = null;
+			this.blobs.put(blob.id, blob);
+		}
+	}
+
+	/**
+	 * This method gets the blobs of the last frame that are not smaller than minArea
+	 *
+	 * @return the blobs, largest first
+	 */
+	public ArrayList<Blob> getBlobs() {
+		ArrayList<Blob> result = new ArrayList<>();
+		for (Blob blob : this.blobs.values()) {
+			if (blob.area >= this.minArea) {
+				result.add(blob);
+			}
+		}
+		Collections.sort(result, LARGEST_FIRST);
+		return result;
+	}
+
+	/**
+	 * This method gets the id of the blob of a pixel of the last frame
+	 *
+	 * @param x the x of the pixel
+	 * @param y the y of the pixel
+	 * @return the id of the blob, or 0 for the background
+	 */
+	public int getBlobId(int x, int y) {
+		if (this.labels != null && x >= 0 && x < this.width && y >= 0 && y < this.height) {
+			return this.labels[y * this.width + x];
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @return the width of the last frame
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the last frame
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of pixels labeled again for the last frame
+	 */
+	public int getRelabeledPixels() {
+		return relabeledPixels;
+	}
+
+	/**
+	 * This method prints the k largest blobs of the last frame like Detector.outputResults(),
+	 * but every blob is printed with its id instead of its rank
+	 *
+	 * @param k the number of blobs to print
+	 * @param out the stream to print to
+	 */
+	public void outputResults(int k, PrintStream out) {
+		if (k < 1) {
+			throw new IllegalArgumentException(new String("! Error: k should be greater than 0, current k=" + k));
+		}
+		ArrayList<Blob> blobs = getBlobs();
+		int count = Math.min(k, blobs.size());
+		out.println(count + "/" + blobs.size());
+		for (int i = 0; i < count; i++) {
+			out.println("Blob " + blobs.get(i).getId() + ":" + blobs.get(i).getArea() + " pixels");
+		}
+	}
+
+	/**
+	 * This method prints the bounding box and centroid of the k largest blobs of the last frame
+	 *
+	 * @param k the number of blobs to print
+	 * @param out the stream to print to
+	 */
+	public void printBlobDetails(int k, PrintStream out) {
+		ArrayList<Blob> blobs = getBlobs();
+		for (int i = 0; i < Math.min(k, blobs.size()); i++) {
+			Blob blob = blobs.get(i);
+			out.println("Blob " + blob.getId() + ": box (" + blob.getMinX() + "," + blob.getMinY() + ")-(" + blob.getMaxX()
+					+ "," + blob.getMaxY() + ") centroid ("
+					+ String.format("%.1f,%.1f", blob.getCentroidX(), blob.getCentroidY()) + ")");
+		}
+	}
+
+	// main method just for testing: tracks two blobs that move into each other, merge and
+	// come apart, one that moves on its own, one that stays and some noise, and checks every
+	// frame against labeling it as a whole with TwoPassLabeler
+	public static void main(String[] args) {
+		int width = 150;
+		int height = 100;
+		int black = Color.BLACK.getRGB();
+		int white = Color.WHITE.getRGB();
+		for (int tileSize : new int[] { 1, 7, 16, 32, 200 }) {
+			BlobTracker tracker = new BlobTracker(Color.BLACK, 0);
+			tracker.setTileSize(tileSize);
+			Random random = new Random(42);
+			int[] ids = new int[4]; // the ids of the blobs in the previous frame, 0 before the first
+			boolean wasMerged = false;
+			for (int f = 0; f < 45; f++) {
+				int[] frame = new int[width * height];
+				Arrays.fill(frame, white);
+				// 0 moves right and 1 moves left on the same rows, 2 moves up and right, 3 stays
+				int[][] boxes = { { 5 + 2 * f, 10, 20, 12 }, { 120 - 2 * f, 12, 14, 14 }, { 30 + f, 75 - f, 6, 6 },
+						{ 80, 40, 30, 4 } };
+				for (int[] box : boxes) {
+					for (int y = box[1]; y < box[1] + box[3]; y++) {
+						Arrays.fill(frame, y * width + box[0], y * width + box[0] + box[2], black);
+					}
+				}
+				// a line down from 3, which makes it an L
+				for (int y = 40; y < 60; y++) {
+					frame[y * width + 80] = black;
+				}
+				// noise in the bottom rows, away from the blobs
+				for (int i = 0; i < 30; i++) {
+					frame[(95 + random.nextInt(5)) * width + random.nextInt(width)] = black;
+				}
+
+				tracker.track(frame, width, height);
+				int[] forest = TwoPassLabeler.label(frame.clone(), width, height);
+
+				// the same blobs as TwoPassLabeler, pixel by pixel
+				HashMap<Integer, Integer> idOfRoot = new HashMap<>();
+				HashMap<Integer, Integer> rootOfId = new HashMap<>();
+				for (int i = 0; i < frame.length; i++) {
+					int id = tracker.getBlobId(i % width, i / width);
+					if ((frame[i] == black) != (id != 0)) {
+						throw new IllegalStateException("! Error: pixel " + i + " has id " + id + " in frame " + f
+								+ " with tiles of " + tileSize);
+					}
+					if (id != 0) {
+						int root = (forest[i] < 0) ? i : forest[i];
+						Integer known = idOfRoot.put(root, id);
+						Integer knownRoot = rootOfId.put(id, root);
+						if ((known != null && known != id) || (knownRoot != null && knownRoot != root)) {
+							throw new IllegalStateException("! Error: the blob of pixel " + i + " differs from TwoPassLabeler in frame "
+									+ f + " with tiles of " + tileSize);
+						}
+					}
+				}
+				ArrayList<Blob> blobs = tracker.getBlobs();
+				if (blobs.size() != idOfRoot.size()) {
+					throw new IllegalStateException("! Error: " + blobs.size() + " blobs instead of " + idOfRoot.size()
+							+ " in frame " + f + " with tiles of " + tileSize);
+				}
+				for (Blob blob : blobs) {
+					int root = rootOfId.get(blob.getId());
+					if (blob.getArea() != -forest[root] || blob.firstPixel != root) {
+						throw new IllegalStateException("! Error: blob " + blob.getId() + " has " + blob.getArea()
+								+ " pixels instead of " + -forest[root] + " in frame " + f + " with tiles of " + tileSize);
+					}
+				}
+
+				// the ids carry over while a blob moves, and the merged blob keeps one of the two
+				int[] current = new int[boxes.length];
+				for (int b = 0; b < boxes.length; b++) {
+					current[b] = tracker.getBlobId(boxes[b][0] + 1, boxes[b][1] + 1);
+				}
+				boolean merged = current[0] == current[1];
+				for (int b = 0; b < boxes.length && f > 0; b++) {
+					boolean kept = current[b] == ids[b];
+					if (b < 2 && merged != wasMerged) {
+						// merging keeps the id of one of the two, coming apart gives it to one of them
+						kept = current[b] == ids[0] || current[b] == ids[1] || current[1 - b] == ids[b];
+					}
+					if (!kept) {
+						throw new IllegalStateException("! Error: blob " + b + " changed its id from " + ids[b] + " to "
+								+ current[b] + " in frame " + f + " with tiles of " + tileSize);
+					}
+				}
+				if (f > 0 && tileSize < 32 && tracker.getRelabeledPixels() >= width * height) {
+					throw new IllegalStateException("! Error: frame " + f + " was labeled as a whole with tiles of " + tileSize);
+				}
+				ids = current;
+				wasMerged = merged;
+			}
+			System.out.println("tiles of " + tileSize + ": 45 frames like TwoPassLabeler, the ids carry over");
+		}
+	}
+}
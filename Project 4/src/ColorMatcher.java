@@ -0,0 +1,284 @@
+import java.awt.Color;
+
+/**
+ * Decides if packed RGB pixels are within okDist of a fixed color, giving exactly the
+ * same answer as Detector.getDifference(c, pixel) <= okDist.
+ *
+ * getDifference() is a non-decreasing function of the squared distance between the two
+ * colors, so the largest squared distance that is still ok is worked out once and every
+ * pixel is then checked with integer math only. Optionally a table over the colors
+ * quantized to 5 or 6 bits per channel (32K or 256K entries) answers most pixels with a
+ * single lookup; a cell of the table that is only partly within okDist falls back to the
+ * exact check, so the table never changes the answer.
+ *
+ */
+public class ColorMatcher {
+	private static final byte NO = 0; // the whole cell of the table is too far
+	private static final byte YES = 1; // the whole cell of the table is close enough
+	private static final byte CHECK = 2; // the cell needs the exact check
+
+	private final int red; // the channels of the color to match
+	private final int green;
+	private final int blue;
+	private final int maxSquaredDistance; // the largest squared distance that is within okDist
+	private final int shift; // 8 - the bits per channel of the table
+	private final byte[] table; // the quantized table, or null
+
+	/**
+	 * Initialize the matcher without a table
+	 *
+	 * @param c the color to be detected
+	 * @param okDist accepted difference between the detectable color and a pixel color
+	 */
+	public ColorMatcher(Color c, int okDist) {
+		this(c, okDist, 0);
+	}
+
+	/**
+	 * Initialize the matcher
+	 *
+	 * @param c the color to be detected
+	 * @param okDist accepted difference between the detectable color and a pixel color
+	 * @param tableBits the bits per channel of the lookup table: 5, 6, or 0 for no table
+	 */
+	public ColorMatcher(Color c, int okDist, int tableBits) {
+		if (c != null && okDist >= 0 && (tableBits == 0 || tableBits == 5 || tableBits == 6)) {
+			this.red = c.getRed();
+			this.green = c.getGreen();
+			this.blue = c.getBlue();
+			this.maxSquaredDistance = Detector.maxSquaredDistance(okDist);
+			if (tableBits == 0) {
+				this.shift = 0;
+				this.table = null;
+			} else {
+				this.shift = 8 - tableBits;
+				this.table = buildTable(tableBits);
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method checks if a pixel is within okDist of the color
+	 *
+	 * @param rgb the pixel as a packed RGB value
+	 * @return true if getDifference() of the color and the pixel is at most okDist
+	 */
+	public boolean matches(int rgb) {
+		if (table != null) {
+			int cell = table[(((rgb >> 16) & 0xFF) >> shift) << (2 * (8 - shift))
+					| (((rgb >> 8) & 0xFF) >> shift) << (8 - shift) | ((rgb & 0xFF) >> shift)];
+			if (cell != CHECK) {
+				return cell == YES;
+			}
+		}
+		int dr = ((rgb >> 16) & 0xFF) - red;
+		int dg = ((rgb >> 8) & 0xFF) - green;
+		int db = (rgb & 0xFF) - blue;
+		return dr * dr + dg * dg + db * db <= maxSquaredDistance;
+	}
+
+	/**
+	 * This method thresholds a range of packed RGB pixels in place, recoloring them black
+	 * when they match and white otherwise.
+	 *
+	 * Without a table the loop is branch-free: the compare becomes a sign mask that picks
+	 * black or white, so the JIT can unroll it and run it on SIMD registers. With a table
+	 * every pixel goes through matches()
+	 *
+	 * @param pixels the pixels
+	 * @param from the first pixel to threshold
+	 * @param to one past the last pixel to threshold
+	 */
+	public void threshold(int[] pixels, int from, int to) {
+		int black = Color.BLACK.getRGB();
+		int white = Color.WHITE.getRGB();
+		if (table != null) {
+			for (int i = from; i < to; i++) {
+				pixels[i] = matches(pixels[i]) ? black : white;
+			}
+			return;
+		}
+		int r = red;
+		int g = green;
+		int b = blue;
+		int limit = maxSquaredDistance + 1;
+		int flip = black ^ white;
+		for (int i = from; i < to; i++) {
+			int rgb = pixels[i];
+			int dr = ((rgb >> 16) & 0xFF) - r;
+			int dg = ((rgb >> 8) & 0xFF) - g;
+			int db = (rgb & 0xFF) - b;
+			// all ones when the squared distance is below limit, all zeros otherwise
+			int mask = (dr * dr + dg * dg + db * db - limit) >> 31;
+			pixels[i] = white ^ (mask & flip);
+		}
+	}
+
+	/**
+	 * This method thresholds packed RGB pixels into a bit-plane, one bit per pixel that is
+	 * set when the pixel matches. Every row starts on a new long word, the lowest bit first,
+	 * and the pixels are left unchanged
+	 *
+	 * @param pixels the image, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the bit-plane, (width + 63) / 64 words per row
+	 */
+	public long[] mask(int[] pixels, int width, int height) {
+		return mask(pixels, width, height, new ColorMatcher[] { this })[0];
+	}
+
+	/**
+	 * This method thresholds packed RGB pixels into one bit-plane per matcher in a single
+	 * scan of the image: every 64 pixels are checked against all the matchers while they
+	 * are in the cache. A pixel can match any number of the matchers
+	 *
+	 * @param pixels the image, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param matchers the matchers
+	 * @return the bit-plane of every matcher, see mask(pixels, width, height)
+	 */
+	public static long[][] mask(int[] pixels, int width, int height, ColorMatcher[] matchers) {
+		if (pixels != null && matchers != null && width >= 0 && height >= 0 && pixels.length >= width * height) {
+			int wordsPerRow = (width + 63) >>> 6;
+			long[][] words = new long[matchers.length][wordsPerRow * height];
+			for (int y = 0; y < height; y++) {
+				for (int w = 0; w < wordsPerRow; w++) {
+					int from = y * width + (w << 6);
+					int to = Math.min(from + 64, (y + 1) * width);
+					for (int m = 0; m < matchers.length; m++) {
+						words[m][y * wordsPerRow + w] = matchers[m].maskWord(pixels, from, to);
+					}
+				}
+			}
+			return words;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method thresholds up to 64 pixels into the bits of a word
+	 *
+	 * @param pixels the pixels
+	 * @param from the pixel of the lowest bit
+	 * @param to one past the last pixel
+	 * @return the word, bit i is set if pixel from + i matches
+	 */
+	private long maskWord(int[] pixels, int from, int to) {
+		long word = 0;
+		if (table != null) {
+			for (int i = from; i < to; i++) {
+				if (matches(pixels[i])) {
+					word |= 1L << (i - from);
+				}
+			}
+		} else {
+			int limit = maxSquaredDistance + 1;
+			for (int i = from; i < to; i++) {
+				int rgb = pixels[i];
+				int dr = ((rgb >> 16) & 0xFF) - red;
+				int dg = ((rgb >> 8) & 0xFF) - green;
+				int db = (rgb & 0xFF) - blue;
+				// the sign bit is 1 when the squared distance is below limit
+				word |= (long) ((dr * dr + dg * dg + db * db - limit) >>> 31) << (i - from);
+			}
+		}
+		return word;
+	}
+
+	/**
+	 * This method classifies every cell of the quantized colors by the closest and the
+	 * farthest color in it
+	 *
+	 * @param bits the bits per channel
+	 * @return the table
+	 */
+	private byte[] buildTable(int bits) {
+		int cells = 1 << bits;
+		int[] nearRed = new int[cells];
+		int[] farRed = new int[cells];
+		int[] nearGreen = new int[cells];
+		int[] farGreen = new int[cells];
+		int[] nearBlue = new int[cells];
+		int[] farBlue = new int[cells];
+		for (int q = 0; q < cells; q++) {
+			int low = q << shift;
+			int high = low + (1 << shift) - 1;
+			nearRed[q] = nearest(red, low, high);
+			farRed[q] = farthest(red, low, high);
+			nearGreen[q] = nearest(green, low, high);
+			farGreen[q] = farthest(green, low, high);
+			nearBlue[q] = nearest(blue, low, high);
+			farBlue[q] = farthest(blue, low, high);
+		}
+		byte[] result = new byte[cells * cells * cells];
+		int index = 0;
+		for (int r = 0; r < cells; r++) {
+			for (int g = 0; g < cells; g++) {
+				for (int b = 0; b < cells; b++) {
+					if (farRed[r] + farGreen[g] + farBlue[b] <= maxSquaredDistance) {
+						result[index++] = YES;
+					} else if (nearRed[r] + nearGreen[g] + nearBlue[b] > maxSquaredDistance) {
+						result[index++] = NO;
+					} else {
+						result[index++] = CHECK;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param value the channel of the color to match
+	 * @param low the smallest value of the cell
+	 * @param high the largest value of the cell
+	 * @return the smallest squared distance between value and the cell
+	 */
+	private static int nearest(int value, int low, int high) {
+		int d = (value < low) ? low - value : (value > high) ? value - high : 0;
+		return d * d;
+	}
+
+	/**
+	 * @param value the channel of the color to match
+	 * @param low the smallest value of the cell
+	 * @param high the largest value of the cell
+	 * @return the largest squared distance between value and the cell
+	 */
+	private static int farthest(int value, int low, int high) {
+		int d = Math.max(Math.abs(value - low), Math.abs(value - high));
+		return d * d;
+	}
+
+	// main method just for testing: compares every 24-bit color against getDifference()
+	public static void main(String[] args) {
+		Color[] colors = { Color.RED, Color.BLUE, new Color(255, 117, 24), new Color(3, 200, 77), Color.WHITE };
+		int[] distances = { 0, 1, 4, 5, 10, 33, 100 };
+		for (Color c : colors) {
+			for (int okDist : distances) {
+				ColorMatcher plain = new ColorMatcher(c, okDist);
+				ColorMatcher small = new ColorMatcher(c, okDist, 5);
+				ColorMatcher large = new ColorMatcher(c, okDist, 6);
+				for (int rgb = 0; rgb < (1 << 24); rgb++) {
+					boolean expected = Detector.getDifference(c.getRGB(), rgb) <= okDist;
+					if (plain.matches(rgb) != expected || small.matches(rgb) != expected
+							|| large.matches(rgb) != expected) {
+						throw new IllegalStateException("! Error: " + c + " okDist=" + okDist + " rgb=" + rgb);
+					}
+				}
+				// and a sample against the original Color version
+				for (int rgb = 0; rgb < (1 << 24); rgb += 997) {
+					if (Detector.getDifference(c, new Color(rgb)) != Detector.getDifference(c.getRGB(), rgb)) {
+						throw new IllegalStateException("! Error: getDifference differs for " + c + " rgb=" + rgb);
+					}
+				}
+			}
+		}
+		System.out.println("all colors match");
+	}
+}
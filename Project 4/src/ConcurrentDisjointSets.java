@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Represents a Disjoint Set of the ints 0 to size-1 that many threads can find and
+ * union at the same time without a lock
+ *
+ * Every element starts as its own root. union() links the root with the larger index
+ * under the one with the smaller index with a compare-and-set, so the root of a set is
+ * always its smallest element and no cycle can form. find() halves the path on the
+ * way; a failed compare-and-set there only means another thread got to it first.
+ *
+ */
+public class ConcurrentDisjointSets {
+	private final AtomicIntegerArray parent; // the parent of every element, roots are their own parent
+
+	/**
+	 * Initialize the Disjoint set
+	 *
+	 * @param size the number of elements
+	 */
+	public ConcurrentDisjointSets(int size) {
+		if (size >= 0) {
+			parent = new AtomicIntegerArray(size);
+			for (int i = 0; i < size; i++) {
+				parent.lazySet(i, i);
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method finds the root of the set of an element, halving the path on the way
+	 *
+	 * @param x the element
+	 * @return the root of the set, which is its smallest element
+	 */
+	public int find(int x) {
+		if (x >= 0 && x < parent.length()) {
+			int p = parent.get(x);
+			while (p != x) {
+				int grandparent = parent.get(p);
+				if (grandparent != p) {
+					parent.compareAndSet(x, p, grandparent);
+				}
+				x = grandparent;
+				p = parent.get(x);
+			}
+			return x;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method computes the union of the sets of two elements. Unlike
+	 * DisjointSets.union() the elements do not have to be roots, since another thread
+	 * could change that at any time
+	 *
+	 * @param x an element of the first set
+	 * @param y an element of the second set
+	 * @return the root of the unioned set
+	 */
+	public int union(int x, int y) {
+		while (true) {
+			int root1 = find(x);
+			int root2 = find(y);
+			if (root1 == root2) {
+				return root1;
+			}
+			if (root1 > root2) {
+				int temp = root1;
+				root1 = root2;
+				root2 = temp;
+			}
+			// fails if root2 stopped being a root in the meantime, then try again
+			if (parent.compareAndSet(root2, root2, root1)) {
+				return root1;
+			}
+		}
+	}
+
+	/**
+	 * This method checks if two elements are in the same set
+	 *
+	 * @param x the first element
+	 * @param y the second element
+	 * @return true if both are in the same set
+	 */
+	public boolean sameSet(int x, int y) {
+		while (true) {
+			int root1 = find(x);
+			int root2 = find(y);
+			if (root1 == root2) {
+				return true;
+			}
+			// root1 was still a root after root2 was found, so they were apart at that point
+			if (parent.get(root1) == root1) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * This method gets the number of elements
+	 *
+	 * @return the number of elements
+	 */
+	public int size() {
+		return parent.length();
+	}
+
+	// main method just for testing: unions random pairs from many threads and checks
+	// the partition against the sequential DisjointSets
+	public static void main(String[] args) throws InterruptedException {
+		final int size = 200000;
+		final int threads = 8;
+		Random random = new Random(42);
+		for (int round = 0; round < 10; round++) {
+			final int[] pairs = new int[size * 2];
+			int unions = (round % 2 == 0) ? size / 2 : size;
+			for (int i = 0; i < unions * 2; i++) {
+				pairs[i] = random.nextInt(size);
+			}
+			final int pairCount = unions;
+
+			final ConcurrentDisjointSets cds = new ConcurrentDisjointSets(size);
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				final int first = t;
+				workers[t] = new Thread(new Runnable() {
+					public void run() {
+						// interleave the pairs so threads keep hitting the same sets
+						for (int i = first; i < pairCount; i += threads) {
+							cds.union(pairs[2 * i], pairs[2 * i + 1]);
+							cds.find(pairs[2 * ((i * 7) % pairCount)]);
+						}
+					}
+				});
+				workers[t].start();
+			}
+			for (int t = 0; t < threads; t++) {
+				workers[t].join();
+			}
+
+			ArrayList<Integer> data = new ArrayList<>();
+			for (int i = 0; i < size; i++) {
+				data.add(i);
+			}
+			DisjointSets<Integer> ds = new DisjointSets<>(data);
+			for (int i = 0; i < pairCount; i++) {
+				int root1 = ds.find(pairs[2 * i]);
+				int root2 = ds.find(pairs[2 * i + 1]);
+				if (root1 != root2) {
+					ds.union(root1, root2);
+				}
+			}
+
+			// the smallest element of each sequential set must be the concurrent root
+			int[] smallest = new int[size];
+			for (int i = 0; i < size; i++) {
+				smallest[i] = -1;
+			}
+			for (int i = 0; i < size; i++) {
+				int root = ds.find(i);
+				if (smallest[root] == -1) {
+					smallest[root] = i;
+				}
+				if (cds.find(i) != smallest[root]) {
+					throw new IllegalStateException("round " + round + ": element " + i + " is in the wrong set");
+				}
+			}
+			System.out.println("round " + round + ": " + pairCount + " unions on " + threads + " threads, same partition");
+		}
+	}
+}
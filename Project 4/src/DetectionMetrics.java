@@ -0,0 +1,51 @@
+/**
+ * Receives what a Detector measures while it runs, see Detector.setMetrics(). A
+ * Detector without metrics measures nothing, so leaving them off costs nothing.
+ *
+ */
+public interface DetectionMetrics {
+	/**
+	 * This method is called when a phase of a run ends, like decode, thresh, label,
+	 * union-find, roots, sort, recolor or encode. A phase can end more than once in a run
+	 *
+	 * @param phase the name of the phase
+	 * @param nanos the wall time of the phase in nanoseconds
+	 */
+	void phase(String phase, long nanos);
+
+	/**
+	 * This method is called once per detect() with the pixels of the image
+	 *
+	 * @param pixels the number of pixels labeled
+	 */
+	void pixels(long pixels);
+
+	/**
+	 * This method is called once per detect() in the modes that label with a DisjointSets
+	 *
+	 * @param unions the calls of union()
+	 * @param finds the calls of find()
+	 * @param findSteps the parent links followed by all the finds together
+	 */
+	void unionFind(long unions, long finds, long findSteps);
+
+	/**
+	 * This method is called once per detect() in the modes that label with a DisjointSets,
+	 * with the shape of its forest after the last union
+	 *
+	 * @param elements the number of elements of the forest
+	 * @param maxDepth the largest number of parent links from an element to its root
+	 * @param meanDepth the mean number of parent links from an element to its root
+	 * @param compressions the parent links rewritten by find()
+	 * @param pathLengths how many finds followed 0, 1, 2, ... parent links, see
+	 *            DisjointSets.getPathLengthHistogram()
+	 */
+	void forest(int elements, int maxDepth, double meanDepth, long compressions, long[] pathLengths);
+
+	/**
+	 * This method is called once per outputResults() with the number of blobs found
+	 *
+	 * @param blobs the number of blobs that are not smaller than minArea
+	 */
+	void blobs(int blobs);
+}
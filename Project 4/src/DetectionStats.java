@@ -0,0 +1,186 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Adds up what one or more Detectors measure, see DetectionMetrics, and shows it as a
+ * line of JSON or through JMX. All methods are synchronized, so the Detectors of a
+ * batch can share one DetectionStats.
+ *
+ */
+public class DetectionStats implements DetectionMetrics, DetectionStatsMBean {
+	/** the name the statistics are registered under by register() */
+	public static final String OBJECT_NAME = "BlobDetection:type=DetectionStats";
+
+	private LinkedHashMap<String, Long> phases = new LinkedHashMap<>(); // the nanoseconds of every phase, in the order seen
+	private long runs; // the number of detect() calls
+	private long pixels; // the pixels labeled
+	private long blobs; // the blobs found
+	private long unions; // the calls of DisjointSets.union()
+	private long finds; // the calls of DisjointSets.find()
+	private long findSteps; // the parent links followed by the finds
+	private long compressions; // the parent links rewritten by the finds
+	private long elements; // the elements of the forests
+	private double depthSum; // the depths of the elements of the forests added up
+	private int maxDepth; // the deepest forest
+	private long[] pathLengths = new long[0]; // the path lengths of the finds
+
+	public synchronized void phase(String phase, long nanos) {
+		Long total = phases.get(phase);
+		phases.put(phase, (total == null) ? nanos : total + nanos);
+	}
+
+	public synchronized void pixels(long pixels) {
+		this.runs++;
+		this.pixels += pixels;
+	}
+
+	public synchronized void unionFind(long unions, long finds, long findSteps) {
+		this.unions += unions;
+		this.finds += finds;
+		this.findSteps += findSteps;
+	}
+
+	public synchronized void forest(int elements, int maxDepth, double meanDepth, long compressions,
+			long[] pathLengths) {
+		this.elements += elements;
+		this.depthSum += meanDepth * elements;
+		this.maxDepth = Math.max(this.maxDepth, maxDepth);
+		this.compressions += compressions;
+		if (this.pathLengths.length < pathLengths.length) {
+			this.pathLengths = Arrays.copyOf(this.pathLengths, pathLengths.length);
+		}
+		for (int i = 0; i < pathLengths.length; i++) {
+			this.pathLengths[i] += pathLengths[i];
+		}
+	}
+
+	public synchronized void blobs(int blobs) {
+		this.blobs += blobs;
+	}
+
+	public synchronized long getRuns() {
+		return runs;
+	}
+
+	public synchronized long getPixels() {
+		return pixels;
+	}
+
+	public synchronized long getBlobs() {
+		return blobs;
+	}
+
+	public synchronized long getUnions() {
+		return unions;
+	}
+
+	public synchronized long getFinds() {
+		return finds;
+	}
+
+	public synchronized double getAverageFindPathLength() {
+		return (finds == 0) ? 0 : (double) findSteps / finds;
+	}
+
+	public synchronized long getCompressions() {
+		return compressions;
+	}
+
+	public synchronized int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public synchronized double getMeanDepth() {
+		return (elements == 0) ? 0 : depthSum / elements;
+	}
+
+	public synchronized long[] getPathLengthHistogram() {
+		return pathLengths.clone();
+	}
+
+	public synchronized String[] getPhaseNames() {
+		return phases.keySet().toArray(new String[phases.size()]);
+	}
+
+	public synchronized double getPhaseMillis(String phase) {
+		Long total = phases.get(phase);
+		return (total == null) ? 0 : total / 1e6;
+	}
+
+	/**
+	 * This method writes the statistics as one line of JSON. The union and find counts and
+	 * the shape of the forest are only there when a mode with a DisjointSets ran, and the
+	 * histogram of the find path lengths stops at the longest path seen
+	 *
+	 * @return the line, like {"runs":1,"pixels":50000,"blobs":9,"phases_ms":{"decode":12.5}}
+	 */
+	public synchronized String getJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"runs\":").append(runs);
+		json.append(",\"pixels\":").append(pixels);
+		json.append(",\"blobs\":").append(blobs);
+		if (finds > 0 || unions > 0) {
+			json.append(",\"unions\":").append(unions);
+			json.append(",\"finds\":").append(finds);
+			json.append(",\"avg_find_path\":").append(String.format(Locale.ROOT, "%.3f", getAverageFindPathLength()));
+		}
+		if (elements > 0) {
+			json.append(",\"compressions\":").append(compressions);
+			json.append(",\"max_depth\":").append(maxDepth);
+			json.append(",\"mean_depth\":").append(String.format(Locale.ROOT, "%.3f", getMeanDepth()));
+			int last = pathLengths.length;
+			while (last > 0 && pathLengths[last - 1] == 0) {
+				last--;
+			}
+			json.append(",\"find_path_histogram\":[");
+			for (int i = 0; i < last; i++) {
+				json.append((i > 0) ? "," : "").append(pathLengths[i]);
+			}
+			json.append(']');
+		}
+		json.append(",\"phases_ms\":{");
+		boolean first = true;
+		long total = 0;
+		for (Map.Entry<String, Long> phase : phases.entrySet()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			json.append('"').append(phase.getKey()).append("\":")
+					.append(String.format(Locale.ROOT, "%.3f", phase.getValue() / 1e6));
+			total += phase.getValue();
+		}
+		json.append("},\"total_ms\":").append(String.format(Locale.ROOT, "%.3f", total / 1e6)).append('}');
+		return json.toString();
+	}
+
+	public synchronized void reset() {
+		phases.clear();
+		runs = 0;
+		pixels = 0;
+		blobs = 0;
+		unions = 0;
+		finds = 0;
+		findSteps = 0;
+		compressions = 0;
+		elements = 0;
+		depthSum = 0;
+		maxDepth = 0;
+		pathLengths = new long[0];
+	}
+
+	/**
+	 * This method registers the statistics with the platform MBean server under OBJECT_NAME
+	 *
+	 * @throws JMException if the name is taken or the server refuses them
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+	}
+}
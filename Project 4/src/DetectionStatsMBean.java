@@ -0,0 +1,80 @@
+/**
+ * The management interface of DetectionStats, so a running batch can be watched with
+ * jconsole or any other JMX client.
+ *
+ */
+public interface DetectionStatsMBean {
+	/**
+	 * @return the number of detect() calls
+	 */
+	long getRuns();
+
+	/**
+	 * @return the pixels labeled by all the runs
+	 */
+	long getPixels();
+
+	/**
+	 * @return the blobs found by all the runs
+	 */
+	long getBlobs();
+
+	/**
+	 * @return the calls of DisjointSets.union()
+	 */
+	long getUnions();
+
+	/**
+	 * @return the calls of DisjointSets.find()
+	 */
+	long getFinds();
+
+	/**
+	 * @return the parent links followed per find, 0 if nothing was found
+	 */
+	double getAverageFindPathLength();
+
+	/**
+	 * @return the parent links rewritten by DisjointSets.find()
+	 */
+	long getCompressions();
+
+	/**
+	 * @return the deepest DisjointSets forest after its last union
+	 */
+	int getMaxDepth();
+
+	/**
+	 * @return the mean depth of the elements of all the DisjointSets forests
+	 */
+	double getMeanDepth();
+
+	/**
+	 * @return how many finds followed 0, 1, 2, ... parent links, the last entry counts
+	 *         32 links or more
+	 */
+	long[] getPathLengthHistogram();
+
+	/**
+	 * @return the names of the phases seen so far
+	 */
+	String[] getPhaseNames();
+
+	/**
+	 * This method gets the wall time of a phase summed over all runs
+	 *
+	 * @param phase the name of the phase
+	 * @return the milliseconds, 0 for a phase that was never seen
+	 */
+	double getPhaseMillis(String phase);
+
+	/**
+	 * @return all the statistics as one line of JSON
+	 */
+	String getJson();
+
+	/**
+	 * This method starts all the statistics over
+	 */
+	void reset();
+}
@@ -1,12 +1,15 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Collections;
 import java.util.AbstractCollection;
-import java.util.TreeSet;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
 import java.awt.*;
 import java.awt.image.*;
@@ -43,6 +46,53 @@ public class Detector extends JPanel {
 		}
 	}
 
+	// getDifference() of every possible squared distance, worked out with the same double math
+	private static final byte[] DIFFERENCES = new byte[195076];
+	static {
+		for (int i = 0; i < DIFFERENCES.length; i++) {
+			double temp = i;
+			DIFFERENCES[i] = (byte) Math.floor((temp / 195075) * 100);
+		}
+	}
+
+	/**
+	 * This method calculates the same difference as getDifference(Color, Color) straight from
+	 * packed RGB values, using integer math and a table instead of Color objects and Math.pow
+	 * 
+	 * @param rgb1 The first color as a packed RGB value
+	 * @param rgb2 The second color as a packed RGB value
+	 * 
+	 * @return the color difference between 0 and 100 as a type int
+	 */
+	public static int getDifference(int rgb1, int rgb2) {
+		int dr = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+		int dg = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+		int db = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+		return DIFFERENCES[dr * dr + dg * dg + db * db];
+	}
+
+	/**
+	 * This method calculates the largest squared distance between two colors whose difference
+	 * is still at most okDist
+	 * 
+	 * @param okDist accepted difference between two colors
+	 * @return the largest squared distance, -1 if there is none
+	 */
+	static int maxSquaredDistance(int okDist) {
+		// the differences never go down, so search for the last one that is ok
+		int low = -1;
+		int high = DIFFERENCES.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (DIFFERENCES[mid] <= okDist) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
 	/**
 	 * This method thresholds all the pixel in an image and recolors them as white and black
 	 * where black pixels are the pixels we want and white pixels are all the other pixels
@@ -53,22 +103,34 @@ public class Detector extends JPanel {
 	 */
 	public static void thresh(BufferedImage image, Color c, int okDist) {
 		if (image != null && c != null && okDist >= 0) {
+			thresh(image, new ColorMatcher(c, okDist));
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method thresholds all the pixel in an image like thresh(image, c, okDist), with the
+	 * color and distance given as a ColorMatcher
+	 * 
+	 * @param image The image to be threshold
+	 * @param matcher decides which pixels are close enough to the color to be detected
+	 */
+	public static void thresh(BufferedImage image, ColorMatcher matcher) {
+		if (image != null && matcher != null) {
 			int width = image.getWidth();
 			int height = image.getHeight();
-			Color black = Color.BLACK;
-			Color white = Color.WHITE;
+			int[] pixels = packedPixels(image);
+			if (pixels != null) {
+				matcher.threshold(pixels, 0, width * height);
+				return;
+			}
+			// a row at a time, so the threshold kernel runs over a plain int array
+			int[] row = new int[width];
 			for (int i = 0; i < height; i++) {
-				for (int j = 0; j < width; j++) {
-					Pixel P = getPixel(image, ((i * width) + j));
-					Color pixelColor = getColor(image, P);
-					int dist = getDifference(c, pixelColor);
-					if (dist <= okDist) {
-						image.setRGB(P.a, P.b, black.getRGB());
-					} else {
-						image.setRGB(P.a, P.b, white.getRGB());
-					}
-
-				}
+				image.getRGB(0, i, width, 1, row, 0, width);
+				matcher.threshold(row, 0, width);
+				image.setRGB(0, i, width, 1, row, 0, width);
 			}
 		} else {
 			throw new IllegalArgumentException();
@@ -117,17 +179,66 @@ public class Detector extends JPanel {
 	 * thresholding the image and performing union and find operations in the disjoint set of pixels
 	 */
 	public void detect() {
+		startPhases();
+		this.runs = null;
+		this.runSets = null;
+		if (this.metrics != null) {
+			this.metrics.pixels((long) this.img.getWidth() * this.img.getHeight());
+		}
+		if (this.mode == Mode.RLE) {
+			detectRuns();
+			return;
+		}
+		if (this.mode == Mode.FUSED) {
+			int width = this.img.getWidth();
+			int height = this.img.getHeight();
+			this.ds = null;
+			this.parent = null;
+			this.fused = FusedLabeler.label(pixels(), width, height, colorMatcher());
+			endPhase("label");
+			return;
+		}
+		this.fused = null;
+		if (this.mode != Mode.DISJOINT_SETS) {
+			detectPixels();
+			return;
+		}
+		this.parent = null;
+
+		// the colors are needed for the mean color of the blobs, before they are thresholded away
+		int[] pixels = pixels();
+		int[] source = null;
+		if (this.keepBlobStats) {
+			source = pixels.clone();
+		}
+
 		// thresholds the image
-		thresh(this.img, this.blobColor, this.okDist);
+		colorMatcher().threshold(pixels, 0, pixels.length);
+		endPhase("thresh");
 
-		// make the DisjointSet data structure
+		// make the DisjointSet data structure, flagging the roots of the pixels that are not white
 		ArrayList<Pixel> pixelData = new ArrayList<>();
+		this.foreground = new BitSet(this.img.getWidth() * this.img.getHeight());
+		int white = Color.WHITE.getRGB();
 		for (int i = 0; i < this.img.getHeight(); i++) {
 			for (int j = 0; j < this.img.getWidth(); j++) {
-				pixelData.add(getPixel(this.img, (i * this.img.getWidth() + j)));
+				Pixel p = getPixel(this.img, (i * this.img.getWidth() + j));
+				pixelData.add(p);
+				if (getDifference(pixels[i * this.img.getWidth() + j], white) != 0) {
+					this.foreground.set(i * this.img.getWidth() + j);
+				}
 			}
 		}
-		this.ds = new DisjointSets<>(pixelData);
+		this.ds = new DisjointSets<>(pixelData, this.lazySets, this.linkPolicy);
+		if (source != null) {
+			BlobStats stats = new BlobStats(pixelData.size());
+			for (int i = 0; i < pixelData.size(); i++) {
+				stats.add(i, pixelData.get(i).a, pixelData.get(i).b, source[i]);
+			}
+			this.ds.setStats(stats);
+		}
+		this.ds.setCounting(this.metrics != null);
+		endPhase("build");
 
 		// walks through the image and perform finds and unions where appropriate
 		for (int i = 0; i < this.img.getHeight(); i++) {
@@ -135,8 +246,7 @@ public class Detector extends JPanel {
 				int currentPixelId = getId(img, j, i);
 				Pair<Integer, Integer> neighborPair = getNeighborSets(img, ds, currentPixelId);
 				if (neighborPair.a != null) {
-					int difference = getDifference(getColor(img, pixelData.get(neighborPair.a)),
-							getColor(img, pixelData.get(currentPixelId)));
+					int difference = getDifference(pixels[neighborPair.a], pixels[currentPixelId]);
 					if (difference <= okDist) {
 						int root1 = ds.find(currentPixelId);
 						if (root1 != neighborPair.a) {
@@ -145,19 +255,263 @@ public class Detector extends JPanel {
 					}
 				}
 				if (neighborPair.b != null) {
-					int difference = getDifference(getColor(img, pixelData.get(neighborPair.b)),
-							getColor(img, pixelData.get(currentPixelId)));
+					int difference = getDifference(pixels[neighborPair.b], pixels[currentPixelId]);
 					if (difference <= okDist) {
+						// the union with the pixel above can link this root under another one
+						// with a link policy other than SIZE, so find it again
 						int root1 = ds.find(currentPixelId);
-						if (root1 != neighborPair.b) {
-							ds.union(ds.find(currentPixelId), neighborPair.b);
+						int root2 = ds.find(neighborPair.b);
+						if (root1 != root2) {
+							ds.union(root1, root2);
 						}
 					}
 				}
 
 			}
 		}
+		endPhase("union-find");
+		reportForest(ds, pixelData.size());
+	}
 
+	/**
+	 * This method does the work of detect() for the RLE mode. Every thresholded row is cut
+	 * into runs of pixels, each run is one element of the DisjointSets, and every run is
+	 * unioned with the runs of the row above that it overlaps
+	 */
+	private void detectRuns() {
+		int width = this.img.getWidth();
+		int height = this.img.getHeight();
+		this.ds = null;
+		this.parent = null;
+		this.fused = null;
+		int[] pixels = pixels();
+		long[] mask = colorMatcher().mask(pixels, width, height);
+		endPhase("thresh");
+
+		// the runs in raster order, and the index of the first run of every row
+		this.runs = new ArrayList<>();
+		int[] rowStart = new int[height + 1];
+		int[] starts = new int[(width + 1) / 2];
+		int[] ends = new int[(width + 1) / 2];
+		int wordsPerRow = (width + 63) >>> 6;
+		for (int y = 0; y < height; y++) {
+			rowStart[y] = this.runs.size();
+			int count = BitmaskLabeler.rowRuns(mask, y * wordsPerRow, wordsPerRow, width, starts, ends);
+			for (int r = 0; r < count; r++) {
+				this.runs.add(new Run(starts[r], y, ends[r] - starts[r]));
+			}
+		}
+		rowStart[height] = this.runs.size();
+
+		// the area of a set is the sum of its run lengths, kept at the root by union()
+		this.runSets = new DisjointSets<>(this.runs, this.lazySets, this.linkPolicy);
+		BlobStats stats = new BlobStats(this.runs.size());
+		for (int i = 0; i < this.runs.size(); i++) {
+			Run run = this.runs.get(i);
+			stats.addRun(i, run.x, run.y, run.length, this.keepBlobStats ? pixels : null, width);
+		}
+		this.runSets.setStats(stats);
+		this.runSets.setCounting(this.metrics != null);
+		endPhase("build");
+
+		for (int y = 1; y < height; y++) {
+			int first = rowStart[y - 1]; // the first run above that can still overlap
+			for (int r = rowStart[y]; r < rowStart[y + 1]; r++) {
+				Run run = this.runs.get(r);
+				while (first < rowStart[y] && this.runs.get(first).x + this.runs.get(first).length <= run.x) {
+					first++;
+				}
+				int next = first;
+				while (next < rowStart[y] && this.runs.get(next).x < run.x + run.length) {
+					int root1 = this.runSets.find(r);
+					int root2 = this.runSets.find(next);
+					if (root1 != root2) {
+						this.runSets.union(root1, root2);
+					}
+					next++;
+				}
+				// the last run above that overlaps can overlap the next run as well
+				if (next > first) {
+					first = next - 1;
+				}
+			}
+		}
+		endPhase("union-find");
+		reportForest(this.runSets, this.runs.size());
+
+		// the colors were only needed for the statistics
+		BitmaskLabeler.paint(mask, width, height, pixels);
+		endPhase("paint");
+	}
+
+	/**
+	 * This method does the work of detect() for the modes that label into an int forest
+	 */
+	private void detectPixels() {
+		int width = this.img.getWidth();
+		int height = this.img.getHeight();
+		this.ds = null;
+		int[] pixels = pixels();
+		if (this.mode == Mode.SEGMENT) {
+			// every region counts, whatever its color
+			this.parent = ParallelLabeler.segment(pixels, width, height, this.okDist, ForkJoinPool.commonPool());
+			endPhase("label");
+			this.foreground = new BitSet(this.parent.length);
+			for (int i = 0; i < this.parent.length; i++) {
+				if (this.parent[i] < 0) {
+					this.foreground.set(i);
+				}
+			}
+			endPhase("roots");
+			return;
+		}
+		if (this.mode == Mode.BITMASK) {
+			// label the bit-plane, the image is only thresholded for the output
+			long[] mask = colorMatcher().mask(pixels, width, height);
+			endPhase("thresh");
+			this.parent = BitmaskLabeler.label(mask, width, height);
+			endPhase("label");
+			BitmaskLabeler.paint(mask, width, height, pixels);
+			endPhase("paint");
+		} else {
+			if (this.mode == Mode.PARALLEL) {
+				ParallelLabeler.thresh(pixels, width, height, colorMatcher(), ForkJoinPool.commonPool());
+			} else {
+				colorMatcher().threshold(pixels, 0, pixels.length);
+			}
+			endPhase("thresh");
+
+			if (this.mode == Mode.PARALLEL) {
+				this.parent = ParallelLabeler.label(pixels, width, height, ForkJoinPool.commonPool());
+			} else if (this.mode == Mode.TWO_PASS) {
+				this.parent = TwoPassLabeler.label(pixels, width, height);
+			} else {
+				this.parent = PixelLabeler.label(pixels, width, height, this.okDist);
+			}
+			endPhase("label");
+		}
+
+		flagForeground(pixels);
+		endPhase("roots");
+	}
+
+	/**
+	 * This method flags every root of parent that is not white as a blob, which has to be
+	 * done while the image is thresholded since outputResults() reloads it
+	 *
+	 * @param pixels the thresholded image
+	 */
+	private void flagForeground(int[] pixels) {
+		this.foreground = new BitSet(pixels.length);
+		int white = Color.WHITE.getRGB();
+		for (int i = 0; i < this.parent.length; i++) {
+			if (this.parent[i] < 0 && getDifference(pixels[i], white) != 0) {
+				this.foreground.set(i);
+			}
+		}
+	}
+
+	/**
+	 * This method starts timing the phases of a run, if there are metrics
+	 */
+	private void startPhases() {
+		if (this.metrics != null) {
+			this.phaseStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * This method ends a phase of a run and starts the next one, if there are metrics
+	 *
+	 * @param phase the name of the phase that ends
+	 */
+	private void endPhase(String phase) {
+		if (this.metrics != null) {
+			long now = System.nanoTime();
+			this.metrics.phase(phase, now - this.phaseStart);
+			this.phaseStart = now;
+		}
+	}
+
+	/**
+	 * This method reports the counts and the shape of a DisjointSets to the metrics, if
+	 * there are any, and stops its counting. Measuring the depths walks the whole forest,
+	 * so it is timed as a phase of its own
+	 *
+	 * @param sets the DisjointSets after the last union
+	 * @param elements the number of elements of sets
+	 */
+	private void reportForest(DisjointSets<?> sets, int elements) {
+		if (this.metrics != null) {
+			this.metrics.unionFind(sets.getUnionCount(), sets.getFindCount(), sets.getFindSteps());
+			long[] depths = sets.getDepthHistogram();
+			long total = 0;
+			for (int d = 0; d < depths.length; d++) {
+				total += d * depths[d];
+			}
+			double meanDepth = (elements == 0) ? 0 : (double) total / elements;
+			this.metrics.forest(elements, Math.max(0, depths.length - 1), meanDepth, sets.getCompressions(),
+					sets.getPathLengthHistogram());
+			sets.setCounting(false);
+			endPhase("diagnostics");
+		}
+	}
+
+	/**
+	 * This method reports the number of blobs found to the metrics, if there are any
+	 *
+	 * @param top the ranked blobs
+	 */
+	private void countBlobs(TopBlobs top) {
+		if (this.metrics != null) {
+			this.metrics.blobs(top.count());
+		}
+	}
+
+	/**
+	 * This method detects several colors in an image with one decode and one scan of the
+	 * pixels. Every color gets its own bit-plane and its own blobs, the same as a separate
+	 * Detector in the BITMASK mode would find, so blobs of different colors never merge
+	 * even where they touch or a pixel is close enough to both colors
+	 *
+	 * @param imgfile the name of the image
+	 * @param colors the colors to be detected
+	 * @param okDists the acceptable difference between each color and a pixel color
+	 * @param colorTableBits see setColorTableBits()
+	 * @return a detected Detector for every color, ready for outputResults(), or null if
+	 *         the image cannot be read
+	 */
+	public static Detector[] detectColors(String imgfile, Color[] colors, int[] okDists, int colorTableBits) {
+		if (colors != null && okDists != null && colors.length == okDists.length && colors.length > 0) {
+			Detector first = new Detector(imgfile, colors[0], okDists[0]);
+			if (first.img == null) {
+				return null;
+			}
+			BufferedImage source = first.img;
+			int width = source.getWidth();
+			int height = source.getHeight();
+			ColorMatcher[] matchers = new ColorMatcher[colors.length];
+			for (int c = 0; c < colors.length; c++) {
+				matchers[c] = new ColorMatcher(colors[c], okDists[c], colorTableBits);
+			}
+			long[][] masks = ColorMatcher.mask(packedPixels(source), width, height, matchers);
+
+			Detector[] result = new Detector[colors.length];
+			for (int c = 0; c < colors.length; c++) {
+				Detector detector = new Detector(imgfile, colors[c], okDists[c], source);
+				detector.setMode(Mode.BITMASK);
+				detector.setColorTableBits(colorTableBits);
+				int[] pixels = detector.pixels();
+				detector.parent = BitmaskLabeler.label(masks[c], width, height);
+				BitmaskLabeler.paint(masks[c], width, height, pixels);
+				detector.flagForeground(pixels);
+				masks[c] = null;
+				result[c] = detector;
+			}
+			return result;
+		} else {
+			throw new IllegalArgumentException();
+		}
 	}
 
 	/**
@@ -173,122 +527,535 @@ public class Detector extends JPanel {
 		if (k < 1) {
 			throw new IllegalArgumentException(new String("! Error: k should be greater than 0, current k=" + k));
 		}
+		startPhases();
+		if (this.fused != null) {
+			outputFusedResults(outputFileName, outputECFileName, k);
+			return;
+		}
+		if (this.runSets != null) {
+			outputRunResults(outputFileName, outputECFileName, k);
+			return;
+		}
+		if (this.parent != null) {
+			outputPrimitiveResults(outputFileName, outputECFileName, k);
+			return;
+		}
 
-		// get all the roots from the DS
-		TreeSet<Integer> roots = new TreeSet<>();
-		for (int i = 0; i < this.img.getHeight(); i++) {
-			for (int j = 0; j < this.img.getWidth(); j++) {
-				int root = ds.find(getId(this.img, j, i));
-				roots.add(root);
-			}
-		}
-
-		// using the roots, collect all sets of pixels and sort them by size
-		ArrayList<Set<Pixel>> pixelSets = new ArrayList<>();
-		while (!roots.isEmpty()) {
-			// checks if the root contains all white pixels
-			int whitePixelCount = 0;
-			Color white = Color.WHITE;
-			int rootIndex = roots.pollFirst();
-			Set<Pixel> temp = ds.get(rootIndex);
-			for (int i = 0; i < temp.size(); i++) {
-				Pixel p = temp.iterator().next();
-				if (getDifference(getColor(this.img, p), white) == 0) {
-					whitePixelCount++;
-				}
-			}
-			// if root is not of white pixels add it to the arraylist
-			if (whitePixelCount == 0) {
-				pixelSets.add(ds.get(rootIndex));
+		// walk the roots of the DS in order and select the k largest blobs; a set only ever
+		// holds pixels of one color, so the flag of its root says if it is a blob. Blobs of the
+		// same size are ranked by root with the SIZE policy, as they always were; the other
+		// policies pick other roots, so they rank them by their first pixel instead
+		boolean byRoot = ds.getLinkPolicy() == DisjointSets.LinkPolicy.SIZE;
+		TopBlobs top = new TopBlobs(k, this.minArea);
+		for (int rootIndex = this.foreground.nextSetBit(0); rootIndex >= 0; rootIndex = this.foreground
+				.nextSetBit(rootIndex + 1)) {
+			if (ds.isRoot(rootIndex)) {
+				top.offer(byRoot ? rootIndex : ds.first(rootIndex), ds.size(rootIndex));
 			}
 		}
-		// sorting by size
-		for (int i = pixelSets.size() - 1; i >= 0; i--) {
-			for (int j = 1; j <= i; j++) {
-				if (pixelSets.get(j - 1).size() < pixelSets.get(j).size()) {
-					Set<Pixel> temp = pixelSets.get(j - 1);
-					pixelSets.set(j - 1, pixelSets.get(j));
-					pixelSets.set(j, temp);
-
-				}
+		// collect the pixels of the k-largest blobs only, the DS may be building them on demand
+		k = top.size();
+		int[] topRoots = top.getBlobs();
+		if (!byRoot) {
+			for (int i = 0; i < k; i++) {
+				topRoots[i] = ds.find(topRoots[i]);
 			}
-
 		}
+		ArrayList<Set<Pixel>> pixelSets = ds.get(topRoots);
+		countBlobs(top);
+		endPhase("roots");
+
 		// recolor the k-largest blobs from black to a color from getSeqColor()
-		if (pixelSets.size() < k) {
-			k = pixelSets.size();
-		}
+		int[] pixels = pixels();
+		int width = this.img.getWidth();
 		for (int i = 0; i < k; i++) {
-			Color c = getSeqColor(i, k);
+			int rgb = getSeqColor(i, k).getRGB();
+			// iterated in place, the members are not copied into an array first
 			Set<Pixel> currentSet = pixelSets.get(i);
-			Object[] pArr = currentSet.toArray();
-			for (int j = 0; j < pArr.length; j++) {
-				Pixel currentPixel = (Pixel) pArr[j];
-				this.img.setRGB(currentPixel.a, currentPixel.b, c.getRGB());
+			for (Pixel currentPixel : currentSet) {
+				pixels[currentPixel.b * width + currentPixel.a] = rgb;
 			}
 		}
+		endPhase("recolor");
 
 		// and output all blobs to console
-		System.out.println(k + "/" + pixelSets.size());
+		this.out.println(k + "/" + top.count());
 		for (int i = 1; i <= k; i++) {
-			System.out.println("Blob " + i + ":" + pixelSets.get(i - 1).size() + " pixels");
+			this.out.println("Blob " + i + ":" + pixelSets.get(i - 1).size() + " pixels");
 		}
 
 		// save output image -- provided
-		try {
-			File ouptut = new File(outputFileName);
-			ImageIO.write(this.img, "png", ouptut);
-			System.err.println("- Saved result to " + outputFileName);
-		} catch (Exception e) {
-			System.err.println("! Error: Failed to save image to " + outputFileName);
-		}
+		saveImage(this.img, outputFileName, this.log);
+		endPhase("encode");
 
 		
 		
 		//Extra Credit
-		reloadImage();
-		Graphics2D g2 = this.img.createGraphics();
-		g2.setColor(Color.BLACK);
-		g2.setStroke(new BasicStroke(2));
-		Object[] pixelBlob= pixelSets.get(0).toArray();
-		int minX=-1;
-		int maxX=-1;
-		int minY=-1;
-		int maxY=-1;
-			for(int i=0; i<pixelBlob.length;i++) {
-				Pixel current=(Pixel)pixelBlob[i];
-					if(minX ==-1 && minY==-1 && maxX==-1 && maxY==-1) {
-						minX= current.a;
-						minY=current.b;
-						maxX=current.a;
-						maxY=current.b;
-					}else {
-						if(current.a<minX) {
-							minX=current.a;
+		BlobStats stats = ds.getStats();
+		this.topBlobs = topRoots;
+		this.topStats = stats;
+		// no blob is left when minArea is larger than all of them, so there is no box to draw
+		if (k > 0) {
+			int minX=-1;
+			int maxX=-1;
+			int minY=-1;
+			int maxY=-1;
+			if (stats != null) {
+				// the statistics were merged by union(), no need to look at the pixels
+				minX = stats.minX(topRoots[0]);
+				minY = stats.minY(topRoots[0]);
+				maxX = stats.maxX(topRoots[0]);
+				maxY = stats.maxY(topRoots[0]);
+			} else {
+					for(Pixel current : pixelSets.get(0)) {
+							if(minX ==-1 && minY==-1 && maxX==-1 && maxY==-1) {
+								minX= current.a;
+								minY=current.b;
+								maxX=current.a;
+								maxY=current.b;
+							}else {
+								if(current.a<minX) {
+									minX=current.a;
+								}
+								if(current.a>maxX) {
+									maxX=current.a;
+								}
+								if(current.b<minY) {
+									minY=current.b;
+								}
+								if(current.b>maxY) {
+									maxY=current.b;
+								}
+							
+							}
+					}
+			}
+			endPhase("bbox");
+			reloadImage();
+			endPhase("decode");
+			saveBoundingBox(this.img, outputECFileName, minX, minY, maxX, maxY, this.log);
+			endPhase("encode");
+		}
+	}
+
+	/**
+	 * This method does the work of outputResults() for the modes that label into an int forest
+	 * instead of the DisjointSets. Blobs are ranked by size, and by root id when two blobs have
+	 * the same size; in the PRIMITIVE mode the roots are the same as in the DisjointSets version
+	 *
+	 * @param outputFileName the name of the output image file
+	 * @param outputECFileName name of the output image file which saves the drawn rectangle
+	 * @param k the number of bolb to be detected
+	 */
+	private void outputPrimitiveResults(String outputFileName, String outputECFileName, int k) {
+		int width = this.img.getWidth();
+		int height = this.img.getHeight();
+		int[] pixels = pixels();
+
+		TopBlobs top = new TopBlobs(k, this.minArea);
+		for (int i = this.foreground.nextSetBit(0); i >= 0; i = this.foreground.nextSetBit(i + 1)) {
+			top.offer(i, -this.parent[i]);
+		}
+		countBlobs(top);
+		endPhase("roots");
+
+		k = top.size();
+		// the k largest roots, sorted by id so each pixel can look its rank up
+		long[] ranks = new long[k];
+		for (int i = 0; i < k; i++) {
+			ranks[i] = ((long) top.getBlob(i) << 32) | i;
+		}
+		Arrays.sort(ranks);
+		int[] rankRoots = new int[k];
+		int[] rankColors = new int[k];
+		for (int i = 0; i < k; i++) {
+			rankRoots[i] = (int) (ranks[i] >>> 32);
+			rankColors[i] = getSeqColor(i, k).getRGB();
+		}
+		endPhase("sort");
+
+		// recolor the k-largest blobs and find the bounding box of the largest one
+		int minX = -1;
+		int maxX = -1;
+		int minY = -1;
+		int maxY = -1;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int id = y * width + x;
+				int index = Arrays.binarySearch(rankRoots, PixelLabeler.find(this.parent, id));
+				if (index >= 0) {
+					int rank = (int) ranks[index];
+					pixels[id] = rankColors[rank];
+					if (rank == 0) {
+						if (minX == -1 || x < minX) {
+							minX = x;
 						}
-						if(current.a>maxX) {
-							maxX=current.a;
+						if (x > maxX) {
+							maxX = x;
 						}
-						if(current.b<minY) {
-							minY=current.b;
+						if (minY == -1) {
+							minY = y;
 						}
-						if(current.b>maxY) {
-							maxY=current.b;
+						maxY = y;
+					}
+				}
+			}
+		}
+		endPhase("recolor");
+
+		this.out.println(k + "/" + top.count());
+		for (int i = 0; i < k; i++) {
+			this.out.println("Blob " + (i + 1) + ":" + top.getSize(i) + " pixels");
+		}
+
+		this.topBlobs = null;
+		this.topStats = null;
+		saveImage(this.img, outputFileName, this.log);
+		endPhase("encode");
+		if (k > 0) {
+			reloadImage();
+			endPhase("decode");
+			saveBoundingBox(this.img, outputECFileName, minX, minY, maxX, maxY, this.log);
+			endPhase("encode");
+		}
+	}
+
+	/**
+	 * This method does the work of outputResults() for the RLE mode. Blobs are ranked by
+	 * area, and by their first run when two blobs have the same area, which is the same
+	 * order as the TWO_PASS mode; the pixels of the k largest are painted a run at a time
+	 *
+	 * @param outputFileName the name of the output image file
+	 * @param outputECFileName name of the output image file which saves the drawn rectangle
+	 * @param k the number of bolb to be detected
+	 */
+	private void outputRunResults(String outputFileName, String outputECFileName, int k) {
+		int width = this.img.getWidth();
+		BlobStats stats = this.runSets.getStats();
+
+		// runs are in raster order, so the first run seen of a set is its first run
+		boolean[] seen = new boolean[this.runs.size()];
+		TopBlobs top = new TopBlobs(k, this.minArea);
+		for (int i = 0; i < this.runs.size(); i++) {
+			int root = this.runSets.find(i);
+			if (!seen[root]) {
+				seen[root] = true;
+				top.offer(i, stats.size(root));
+			}
+		}
+		k = top.size();
+		int[] roots = new int[k];
+		for (int i = 0; i < k; i++) {
+			roots[i] = this.runSets.find(top.getBlob(i));
+		}
+		ArrayList<Set<Run>> runSetsTop = this.runSets.get(roots);
+		countBlobs(top);
+		endPhase("roots");
+
+		// recolor the k-largest blobs from black to a color from getSeqColor()
+		int[] pixels = pixels();
+		for (int i = 0; i < k; i++) {
+			int rgb = getSeqColor(i, k).getRGB();
+			for (Run run : runSetsTop.get(i)) {
+				Arrays.fill(pixels, run.y * width + run.x, run.y * width + run.x + run.length, rgb);
+			}
+		}
+		endPhase("recolor");
+
+		this.out.println(k + "/" + top.count());
+		for (int i = 0; i < k; i++) {
+			this.out.println("Blob " + (i + 1) + ":" + top.getSize(i) + " pixels");
+		}
+
+		this.topBlobs = roots;
+		this.topStats = this.keepBlobStats ? stats : null;
+		saveImage(this.img, outputFileName, this.log);
+		endPhase("encode");
+		if (k > 0) {
+			reloadImage();
+			endPhase("decode");
+			saveBoundingBox(this.img, outputECFileName, stats.minX(roots[0]), stats.minY(roots[0]),
+					stats.maxX(roots[0]), stats.maxY(roots[0]), this.log);
+			endPhase("encode");
+		}
+	}
+
+	/**
+	 * This method does the work of outputResults() for the FUSED mode. The blobs, their
+	 * sizes and bounding boxes all come from the FusedLabeler; the thresholded and recolored
+	 * result is drawn into a new image, so the input image is never reloaded
+	 *
+	 * @param outputFileName the name of the output image file
+	 * @param outputECFileName name of the output image file which saves the drawn rectangle
+	 * @param k the number of bolb to be detected
+	 */
+	private void outputFusedResults(String outputFileName, String outputECFileName, int k) {
+		int width = this.img.getWidth();
+		int height = this.img.getHeight();
+		BlobStats stats = this.fused.getStats();
+		int[] roots = this.fused.getBlobs();
+
+		TopBlobs top = new TopBlobs(k, this.minArea);
+		for (int i = 0; i < roots.length; i++) {
+			top.offer(roots[i], stats.size(roots[i]));
+		}
+		k = top.size();
+		countBlobs(top);
+		endPhase("roots");
+		int[] rankColors = new int[this.fused.getLabelCount()];
+		int black = Color.BLACK.getRGB();
+		for (int i = 0; i < roots.length; i++) {
+			rankColors[roots[i]] = black;
+		}
+		for (int i = 0; i < k; i++) {
+			rankColors[top.getBlob(i)] = getSeqColor(i, k).getRGB();
+		}
+
+		// the thresholded image with the k-largest blobs recolored
+		int white = Color.WHITE.getRGB();
+		BufferedImage result = new BufferedImage(width, height, this.img.getType());
+		int[] pixels = packedPixels(result);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int blob = this.fused.getBlob(x, y);
+				pixels[y * width + x] = (blob == 0) ? white : rankColors[blob];
+			}
+		}
+		endPhase("recolor");
+
+		this.out.println(k + "/" + top.count());
+		for (int i = 0; i < k; i++) {
+			this.out.println("Blob " + (i + 1) + ":" + top.getSize(i) + " pixels");
+		}
+
+		this.topBlobs = top.getBlobs();
+		this.topStats = stats;
+		saveImage(result, outputFileName, this.log);
+		if (k > 0) {
+			int largest = top.getBlob(0);
+			saveBoundingBox(copyImage(this.img), outputECFileName, stats.minX(largest), stats.minY(largest),
+					stats.maxX(largest), stats.maxY(largest), this.log);
+		}
+		endPhase("encode");
+	}
+
+	/**
+	 * This method numbers the blobs found by detect() and gets the blob of every pixel. The
+	 * blobs are numbered from 1 in raster order of their first pixel, so every mode gives
+	 * the same numbers
+	 *
+	 * @return the label of every pixel, one row after another, 0 for the background
+	 */
+	public int[] getLabelMap() {
+		int width = this.img.getWidth();
+		int height = this.img.getHeight();
+		int[] labels = new int[width * height];
+		int nextLabel = 0;
+		if (this.fused != null) {
+			int[] numbers = new int[this.fused.getLabelCount()];
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int blob = this.fused.getBlob(x, y);
+					if (blob != 0) {
+						if (numbers[blob] == 0) {
+							numbers[blob] = ++nextLabel;
 						}
-						
+						labels[y * width + x] = numbers[blob];
 					}
+				}
 			}
-			
-			g2.draw(new Rectangle2D.Double(minX-1, minY-1, (maxX-minX)+3, (maxY-minY)+3));
-			
+		} else if (this.runSets != null) {
+			// runs are in raster order, so their first pixels are too
+			int[] numbers = new int[this.runs.size()];
+			for (int i = 0; i < this.runs.size(); i++) {
+				int root = this.runSets.find(i);
+				if (numbers[root] == 0) {
+					numbers[root] = ++nextLabel;
+				}
+				Run run = this.runs.get(i);
+				Arrays.fill(labels, run.y * width + run.x, run.y * width + run.x + run.length, numbers[root]);
+			}
+		} else if (this.parent != null || this.ds != null) {
+			int[] numbers = new int[labels.length];
+			for (int i = 0; i < labels.length; i++) {
+				int root = (this.parent != null) ? PixelLabeler.find(this.parent, i) : this.ds.find(i);
+				if (this.foreground.get(root)) {
+					if (numbers[root] == 0) {
+						numbers[root] = ++nextLabel;
+					}
+					labels[i] = numbers[root];
+				}
+			}
+		} else {
+			throw new IllegalStateException("! Error: detect() has not been run");
+		}
+		return labels;
+	}
+
+	/**
+	 * This method saves the label map of getLabelMap() as a raw raster file
+	 *
+	 * @param fileName the name of the output file
+	 */
+	public void saveLabelMap(String fileName) {
 		try {
-			File ouptut = new File(outputECFileName);
-			ImageIO.write(this.img, "png", ouptut);
-			System.err.println("- Saved result to " + outputECFileName);
+			new RawRaster(this.img.getWidth(), this.img.getHeight(), RawRaster.LABELS, getLabelMap()).write(fileName);
+			this.log.println("- Saved labels to " + fileName);
+		} catch (IOException e) {
+			this.log.println("! Error: Failed to save labels to " + fileName);
+		}
+	}
+
+	/**
+	 * This method prints the bounding box, centroid and mean color of the blobs written by
+	 * the last outputResults(). The statistics are kept by the FUSED mode, and by the
+	 * DISJOINT_SETS and RLE modes after setKeepBlobStats(true)
+	 *
+	 * @param out the stream to print to
+	 */
+	public void printBlobDetails(PrintStream out) {
+		if (this.topStats == null) {
+			throw new IllegalStateException("! Error: no blob statistics, use the fused mode or keep them in disjoint_sets or rle");
+		}
+		for (int i = 0; i < this.topBlobs.length; i++) {
+			int blob = this.topBlobs[i];
+			Color mean = this.topStats.meanColor(blob);
+			out.println("Blob " + (i + 1) + ": box (" + this.topStats.minX(blob) + "," + this.topStats.minY(blob)
+					+ ")-(" + this.topStats.maxX(blob) + "," + this.topStats.maxY(blob) + ") centroid ("
+					+ String.format("%.1f,%.1f", this.topStats.centroidX(blob), this.topStats.centroidY(blob))
+					+ ") mean color (" + mean.getRed() + "," + mean.getGreen() + "," + mean.getBlue() + ")");
+		}
+	}
+
+	/**
+	 * This method copies an image, keeping its type and color model
+	 *
+	 * @param image the image to copy
+	 * @return the copy
+	 */
+	private static BufferedImage copyImage(BufferedImage image) {
+		ColorModel cm = image.getColorModel();
+		return new BufferedImage(cm, image.copyData(null), cm.isAlphaPremultiplied(), null);
+	}
+
+	/**
+	 * This method converts an image to packed int pixels, TYPE_INT_ARGB if it has alpha and
+	 * TYPE_INT_RGB otherwise, so every pixel can be read and written straight in the backing
+	 * array without going through the ColorModel
+	 *
+	 * @param image the image to convert
+	 * @return the image itself if it already is packed, otherwise a packed copy
+	 */
+	private static BufferedImage toPackedImage(BufferedImage image) {
+		if (image == null || packedPixels(image) != null) {
+			return image;
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage result = new BufferedImage(width, height, type);
+		int[] pixels = packedPixels(result);
+		WritableRaster raster = image.getRaster();
+		if ((image.getType() == BufferedImage.TYPE_3BYTE_BGR || image.getType() == BufferedImage.TYPE_4BYTE_ABGR)
+				&& raster.getDataBuffer() instanceof DataBufferByte
+				&& raster.getSampleModel() instanceof ComponentSampleModel) {
+			// the decoded JPEG and PNG layouts, read the bytes directly
+			byte[] bytes = ((DataBufferByte) raster.getDataBuffer()).getData();
+			ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+			int stride = sm.getPixelStride();
+			int[] bands = sm.getBandOffsets(); // red, green, blue and alpha
+			boolean alpha = bands.length == 4;
+			for (int y = 0; y < height; y++) {
+				int index = raster.getDataBuffer().getOffset()
+						+ (y - raster.getSampleModelTranslateY()) * sm.getScanlineStride()
+						- raster.getSampleModelTranslateX() * stride;
+				for (int x = 0; x < width; x++) {
+					int a = alpha ? bytes[index + bands[3]] & 0xFF : 0xFF;
+					pixels[y * width + x] = (a << 24) | ((bytes[index + bands[0]] & 0xFF) << 16)
+							| ((bytes[index + bands[1]] & 0xFF) << 8) | (bytes[index + bands[2]] & 0xFF);
+					index += stride;
+				}
+			}
+		} else {
+			image.getRGB(0, 0, width, height, pixels, 0, width);
+		}
+		return result;
+	}
+
+	/**
+	 * This method gets the backing array of an image of packed int pixels
+	 *
+	 * @param image the image
+	 * @return the pixels, one row after another, or null if the image is not laid out that way
+	 */
+	static int[] packedPixels(BufferedImage image) {
+		int type = image.getType();
+		WritableRaster raster = image.getRaster();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt && raster.getDataBuffer().getOffset() == 0
+				&& raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == image.getWidth()) {
+			return ((DataBufferInt) raster.getDataBuffer()).getData();
+		}
+		return null;
+	}
+
+	/**
+	 * This method gets the pixels of the input image, which reloadImage() keeps packed, so
+	 * changes to them change the image
+	 *
+	 * @return the pixels, one row after another
+	 */
+	private int[] pixels() {
+		return packedPixels(this.img);
+	}
+
+	/**
+	 * This method saves an image as a png file, or as a raw raster if the name ends with .raw
+	 *
+	 * @param image the image to save
+	 * @param fileName the name of the output image file
+	 * @param log the stream to report the saved file to
+	 */
+	private static void saveImage(BufferedImage image, String fileName, PrintStream log) {
+		try {
+			if (RawRaster.isRawRaster(fileName)) {
+				int[] pixels = packedPixels(image);
+				if (pixels == null) {
+					pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+				}
+				new RawRaster(image.getWidth(), image.getHeight(), RawRaster.PIXELS, pixels).write(fileName);
+				log.println("- Saved result to " + fileName);
+				return;
+			}
+			File ouptut = new File(fileName);
+			ImageIO.write(image, "png", ouptut);
+			log.println("- Saved result to " + fileName);
 		} catch (Exception e) {
-			System.err.println("! Error: Failed to save image to " + outputECFileName);
+			log.println("! Error: Failed to save image to " + fileName);
 		}
+	}
 
+	/**
+	 * This method draws a rectangle around the given bounding box on an image and saves
+	 * the result
+	 *
+	 * @param image the image to draw on
+	 * @param fileName the name of the output image file
+	 * @param minX the left of the bounding box
+	 * @param minY the top of the bounding box
+	 * @param maxX the right of the bounding box
+	 * @param maxY the bottom of the bounding box
+	 * @param log the stream to report the saved file to
+	 */
+	private static void saveBoundingBox(BufferedImage image, String fileName, int minX, int minY, int maxX,
+			int maxY, PrintStream log) {
+		Graphics2D g2 = image.createGraphics();
+		g2.setColor(Color.BLACK);
+		g2.setStroke(new BasicStroke(2));
+		g2.draw(new Rectangle2D.Double(minX - 1, minY - 1, (maxX - minX) + 3, (maxY - minY) + 3));
+		saveImage(image, fileName, log);
 	}
 
 	// main method just for your testing
@@ -323,6 +1090,8 @@ public class Detector extends JPanel {
 
 		d.outputResults("out.png", "out2.png", 2);
 
+		checkLargeBackground();
+
 		// ArrayList<Pixel> px= new ArrayList<>();
 		/*
 		 * for(int i=0; i<img.getHeight(); i++) { for(int j=0; j<img.getWidth(); j++) {
@@ -341,6 +1110,53 @@ public class Detector extends JPanel {
 
 	}
 
+	/**
+	 * Regression check for outputResults(): a huge white background next to a few small blobs
+	 * used to be scanned pixel by pixel through its Set and every root was boxed into a TreeSet,
+	 * which made outputResults() slower than detect(). The foreground is flagged during
+	 * detect() now, so the output only visits the pixels of the blobs, offers one root per
+	 * blob to the top-k and does no finds over the background. All of that is counted
+	 * instead of timed, so the check does not depend on the machine
+	 */
+	private static void checkLargeBackground() {
+		int size = 1500;
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		g2.setColor(Color.WHITE);
+		g2.fillRect(0, 0, size, size);
+		g2.setColor(Color.BLACK);
+		for (int i = 0; i < 10; i++) {
+			g2.fillRect(i * 140 + 20, i * 140 + 20, 30, 30);
+		}
+		try {
+			File input = File.createTempFile("background", ".png");
+			File output = File.createTempFile("background_blob", ".png");
+			File outputEC = File.createTempFile("background_blob_ec", ".png");
+			ImageIO.write(image, "png", input);
+
+			Detector d = new Detector(input.getPath(), Color.BLACK, 0);
+			DetectionStats stats = new DetectionStats();
+			d.setMetrics(stats);
+			d.detect();
+			stats.reset();
+			int visited = d.foreground.cardinality();
+			d.ds.setCounting(true);
+			d.outputResults(output.getPath(), outputEC.getPath(), 3);
+			long finds = d.ds.getFindCount();
+			System.out.println("large background: the output visits " + visited + " of " + size * size
+					+ " pixels, offers " + stats.getBlobs() + " roots and does " + finds + " finds");
+			input.delete();
+			output.delete();
+			outputEC.delete();
+			// the 10 squares of 30 by 30 pixels, and one find per top blob at most
+			if (visited != 10 * 30 * 30 || stats.getBlobs() != 10 || finds > 3) {
+				throw new IllegalStateException("! Error: outputResults() walks the pixels of a large background");
+			}
+		} catch (IOException e) {
+			System.err.println("! Error: Failed to write the test image, error msg: " + e);
+		}
+	}
+
 	// -----------------------------------------------------------------------
 	//
 	// Todo: Read and provide comments, but do not change the following code
@@ -352,8 +1168,48 @@ public class Detector extends JPanel {
 	private Color blobColor; // the color of the blob we are detecting
 	private String imgFileName; // input image file name
 	private DisjointSets<Pixel> ds; // the disjoint set
+	private BitSet foreground; // the roots of ds or parent that are not white
 	private int okDist; // the distance between blobColor and the pixel which "still counts" as the
 						// color
+	private Mode mode = Mode.DISJOINT_SETS; // the labeling engine used by detect()
+	private boolean lazySets; // whether the DisjointSets builds its member sets on demand
+	private DisjointSets.LinkPolicy linkPolicy = DisjointSets.LinkPolicy.SIZE; // how the DisjointSets links roots
+	private int[] parent; // the union-find forest of the pixels in the int array modes
+	private FusedLabeler fused; // the labeled blobs in the FUSED mode
+	private ArrayList<Run> runs; // the runs of the RLE mode, in raster order
+	private DisjointSets<Run> runSets; // the sets of overlapping runs in the RLE mode
+	private boolean keepBlobStats; // whether the DisjointSets keeps statistics of its sets
+	private int minArea; // blobs with fewer pixels are not ranked or counted
+	private int colorTableBits; // the bits per channel of the ColorMatcher table, 0 for none
+	private int[] topBlobs; // the blobs written by outputResults(), largest first
+	private BlobStats topStats; // the statistics of topBlobs, if the mode keeps them
+	private PrintStream out = System.out; // where outputResults() prints the blobs
+	private PrintStream log = System.err; // where the saved files are reported
+	private BufferedImage source; // the image shared by the Detectors of detectColors(), or null
+	private DetectionMetrics metrics; // gets the phase times and counts of every run, or null
+	private long phaseStart; // when the current phase started, while there are metrics
+
+	/**
+	 * The labeling engines detect() can use
+	 */
+	public enum Mode {
+		/** one DisjointSets element and one Set per Pixel */
+		DISJOINT_SETS,
+		/** a union-find forest in a plain int array, see PixelLabeler */
+		PRIMITIVE,
+		/** two scans with an equivalence table, see TwoPassLabeler */
+		TWO_PASS,
+		/** horizontal strips thresholded and labeled on a fork-join pool, see ParallelLabeler */
+		PARALLEL,
+		/** thresholding, labeling and blob statistics in one scan of the unmodified image, see FusedLabeler */
+		FUSED,
+		/** a bit-plane of the thresholded pixels labeled by runs, see BitmaskLabeler */
+		BITMASK,
+		/** one DisjointSets element per run of thresholded pixels in a row, blob areas are sums of run lengths */
+		RLE,
+		/** no thresholding, every region of neighboring pixels within okDist of each other is a blob, see ParallelLabeler.segment() */
+		SEGMENT
+	}
 	
 	/**
 	 * Initialize the Detector
@@ -370,19 +1226,151 @@ public class Detector extends JPanel {
 	}
 
 	/**
-	 * this method reloads the input image
+	 * Initialize a Detector of one of the colors of detectColors(), which shares the image
+	 * decoded once instead of reading the file again
+	 * @param imgfile the name of the image
+	 * @param blobColor the color to be detected
+	 * @param okDist the acceptable difference between the given color and a pixel color
+	 * @param source the decoded image, left unchanged
+	 */
+	private Detector(String imgfile, Color blobColor, int okDist, BufferedImage source) {
+		this.imgFileName = imgfile;
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+		this.source = source;
+		this.img = new BufferedImage(source.getWidth(), source.getHeight(), source.getType());
+	}
+
+	/**
+	 * this method selects the labeling engine used by detect()
+	 * @param mode the labeling engine
+	 */
+	public void setMode(Mode mode) {
+		if (mode != null) {
+			this.mode = mode;
+		} else {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * this method makes the DISJOINT_SETS and RLE modes keep only the int array of the
+	 * DisjointSets while labeling, and collect the pixels or runs of a blob only when it is output
+	 * @param lazySets true to build the member sets on demand
+	 */
+	public void setLazySets(boolean lazySets) {
+		this.lazySets = lazySets;
+	}
+
+	/**
+	 * this method selects how the DISJOINT_SETS and RLE modes link two roots in union(),
+	 * which changes the shape of the forest but not the blobs. With SIZE the DISJOINT_SETS
+	 * mode ranks blobs of the same size by root as it always has; with RANK and RANDOM the
+	 * root depends on the shape of the forest, so it ranks them by their first pixel, which
+	 * gives the same output for both but may order ties differently than SIZE
+	 * @param linkPolicy the policy, SIZE by default
+	 */
+	public void setLinkPolicy(DisjointSets.LinkPolicy linkPolicy) {
+		if (linkPolicy != null) {
+			this.linkPolicy = linkPolicy;
+		} else {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * this method makes the DISJOINT_SETS and RLE modes keep the area, bounding box, centroid
+	 * and mean color of every set while unioning, for printBlobDetails()
+	 * @param keepBlobStats true to keep the statistics
+	 */
+	public void setKeepBlobStats(boolean keepBlobStats) {
+		this.keepBlobStats = keepBlobStats;
+	}
+
+	/**
+	 * this method makes outputResults() drop blobs smaller than the given area before ranking
+	 * @param minArea the smallest number of pixels of a blob that is output
+	 */
+	public void setMinArea(int minArea) {
+		this.minArea = minArea;
+	}
+
+	/**
+	 * this method sets where outputResults() prints the blobs and reports the saved images,
+	 * so detectors running at the same time do not mix their lines
+	 * @param out the stream to print to, System.out for the blobs and System.err for the saved images by default
+	 */
+	public void setOutput(PrintStream out) {
+		if (out != null) {
+			this.out = out;
+			this.log = out;
+		} else {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * this method makes detect() and outputResults() report the time of every phase and
+	 * their counts, see DetectionMetrics
+	 * @param metrics the metrics, or null to measure nothing
+	 */
+	public void setMetrics(DetectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * this method makes thresholding use a table over the quantized colors, see ColorMatcher
+	 * @param colorTableBits 5 for a 32K table, 6 for a 256K table, 0 for none
+	 */
+	public void setColorTableBits(int colorTableBits) {
+		if (colorTableBits == 0 || colorTableBits == 5 || colorTableBits == 6) {
+			this.colorTableBits = colorTableBits;
+		} else {
+			throw new IllegalArgumentException(new String("! Error: the color table needs 5 or 6 bits, current bits=" + colorTableBits));
+		}
+	}
+
+	/**
+	 * this method creates the ColorMatcher for blobColor and okDist
+	 * @return the matcher
+	 */
+	private ColorMatcher colorMatcher() {
+		return new ColorMatcher(this.blobColor, this.okDist, this.colorTableBits);
+	}
+
+	/**
+	 * this method reloads the input image, converted to packed int pixels. A raw raster
+	 * file is mapped and used as it is, and a Detector of detectColors() copies the shared image
 	 */
 	public void reloadImage() {
-		File imageFile = new File(this.imgFileName);
+		if (this.source != null) {
+			this.img = copyImage(this.source);
+			return;
+		}
 
 		try {
-			this.img = ImageIO.read(imageFile);
+			this.img = readImage(this.imgFileName);
 		} catch (IOException e) {
 			System.err.println("! Error: Failed to read " + this.imgFileName + ", error msg: " + e);
 			return;
 		}
 	}
 
+	/**
+	 * This method reads an image converted to packed int pixels, see toPackedImage(). A raw
+	 * raster file is mapped and used as it is
+	 *
+	 * @param fileName the name of the image
+	 * @return the image, or null if no ImageIO reader knows its format
+	 * @throws IOException if the image cannot be read
+	 */
+	static BufferedImage readImage(String fileName) throws IOException {
+		if (RawRaster.isRawRaster(fileName)) {
+			return RawRaster.read(fileName).toImage();
+		}
+		return toPackedImage(ImageIO.read(new File(fileName)));
+	}
+
 	// JPanel function
 	public void paint(Graphics g) {
 		g.drawImage(this.img, 0, 0, this);
@@ -419,6 +1407,22 @@ public class Detector extends JPanel {
 		}
 	}
 
+	/**
+	 * this class represents a horizontal run of thresholded pixels in one row of an image
+	 *
+	 */
+	private static class Run {
+		int x; // the first pixel of the run
+		int y; // the row of the run
+		int length; // the number of pixels of the run
+
+		public Run(int x, int y, int length) {
+			this.x = x;
+			this.y = y;
+			this.length = length;
+		}
+	}
+
 	/** 
 	 * this method converts a pixel in an image to its ID
 	 * @param image the input image
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 /**
  * Represents a generic Disjoint Set which can operate basic functions such as
  * union, set and find
@@ -8,8 +9,34 @@ import java.util.ArrayList;
  */
 public class DisjointSets<T>
 {
+	/**
+	 * The ways union() can pick which of two roots becomes the new root
+	 */
+	public enum LinkPolicy {
+		/** the root of the larger set, the first root when they are the same size */
+		SIZE,
+		/** the root of the higher tree by rank, an upper bound of its height kept per root */
+		RANK,
+		/** the root with the higher pseudo-random priority, a fixed hash of its index */
+		RANDOM
+	}
+
+	private static final int HISTOGRAM_SIZE = 33; //path lengths 0 to 31, and 32 or more
+
 	private int[] s; //the sets
-	private ArrayList<Set<T>> sets; //the actual data for the sets
+	private int[] next; //the next element of the same set, -1 after the last, null in lazy mode
+	private int[] last; //the last element of the set of every root, null in lazy mode
+	private int[] first; //the smallest element of the set of every root
+	private ArrayList<T> data; //the data the sets were made from
+	private BlobStats stats; //per-root statistics merged by union(), or null
+	private boolean counting; //whether find() and union() count their work
+	private long finds; //the calls of find() while counting
+	private long unions; //the calls of union() while counting
+	private long findSteps; //the parent links followed by find() while counting
+	private long compressions; //the parent links find() rewrote while counting
+	private long[] pathLengths= new long[HISTOGRAM_SIZE]; //how many finds followed every number of links
+	private LinkPolicy policy; //how union() picks the new root
+	private byte[] rank; //the rank of every root in the RANK policy, or null
 
 	/**
 	 * Initialize the Disjoint set
@@ -17,16 +44,50 @@ public class DisjointSets<T>
 	 * @param data The data to be inserted
 	 */
 	public DisjointSets(ArrayList<T> data) {
-		if(data!=null) {
+		this(data, false);
+	}
+
+	/**
+	 * Initialize the Disjoint set. In lazy mode only the int array is kept up to date
+	 * by union(), and the members of a set are collected when get() asks for them
+	 * 
+	 * @param data The data to be inserted
+	 * @param lazy true to build the member sets on demand
+	 */
+	public DisjointSets(ArrayList<T> data, boolean lazy) {
+		this(data, lazy, LinkPolicy.SIZE);
+	}
+
+	/**
+	 * Initialize the Disjoint set with a linking policy for union()
+	 * 
+	 * @param data The data to be inserted
+	 * @param lazy true to build the member sets on demand
+	 * @param policy how union() picks the new root
+	 */
+	public DisjointSets(ArrayList<T> data, boolean lazy, LinkPolicy policy) {
+		if(data!=null && policy!=null) {
 		s= new int[data.size()];
-		sets= new ArrayList<>();
+		first= new int[data.size()];
+		this.data= data;
+		this.policy= policy;
+		if(policy==LinkPolicy.RANK) {
+			rank= new byte[data.size()];
+		}
+		if(!lazy) {
+			// the members of every set are a chain of indexes that starts at the root
+			next= new int[data.size()];
+			last= new int[data.size()];
+		}
 		
 		for(int i=0; i<data.size(); i++) {
-			Set<T> tempSet= new Set<>();
 			if(data.get(i)!=null) {
-			tempSet.add(data.get(i));
-			sets.add(tempSet);
+			if(!lazy) {
+				next[i]=-1;
+				last[i]=i;
+			}
 			s[i]=-1;
+			first[i]=i;
 			}else {
 				throw new NullPointerException();
 			}
@@ -38,7 +99,9 @@ public class DisjointSets<T>
 		
 	}
 	/**
-	 * This method computes the union of two sets using rank union by size
+	 * This method computes the union of two sets, by size unless another LinkPolicy
+	 * was given. The size and the smallest element of the new set are kept at its root
+	 * whatever the policy
 	 * 
 	 * @param root1 the root of first set
 	 * @param root2 the root of second set
@@ -52,58 +115,408 @@ public class DisjointSets<T>
 		}
 		//if two sets are equal, root1 is the new root
 		else {
-		if(s[root1]==s[root2] || s[root1]<s[root2]) {
+		if(counting) {
+			unions++;
+		}
+		boolean firstWins;
+		if(policy==LinkPolicy.SIZE) {
+			firstWins= s[root1]==s[root2] || s[root1]<s[root2];
+		}else if(policy==LinkPolicy.RANK) {
+			firstWins= rank[root1]>=rank[root2];
+			if(rank[root1]==rank[root2]) {
+				rank[root1]++;
+			}
+		}else {
+			firstWins= priority(root1)>=priority(root2);
+		}
+		first[root1]=first[root2]=Math.min(first[root1], first[root2]);
+		if(firstWins) {
 			s[root1]=s[root1]+s[root2];
 			s[root2]=root1;
-			sets.get(root1).addAll(sets.get(root2));
-			sets.get(root2).clear();
+			if(stats!=null) {
+				stats.merge(root1, root2);
+			}
+			if(next!=null) {
+				append(root1, root2);
+			}
 			return root1;
 		}else {
 			s[root2]=s[root2]+s[root1];
 			s[root1]=root2;
-			sets.get(root2).addAll(sets.get(root1));
-			sets.get(root1).clear();
+			if(stats!=null) {
+				stats.merge(root2, root1);
+			}
+			if(next!=null) {
+				append(root2, root1);
+			}
 			return root2;
 		}
 		}
 	}
 
 	/**
-	 * This method finds a specific set usinf path compression
+	 * This method links the members of a set after the members of another one, in
+	 * constant time
+	 * 
+	 * @param root the root of the new set
+	 * @param other the root of the set that was linked under it
+	 */
+	private void append(int root, int other) {
+		next[last[root]]=other;
+		last[root]=last[other];
+	}
+
+	/**
+	 * This method gives every element a fixed pseudo-random priority for the RANDOM
+	 * policy, a bijective hash of its index so no two elements share one
+	 * 
+	 * @param x the element
+	 * @return the priority
+	 */
+	private static int priority(int x) {
+		x^= x>>>16;
+		x*= 0x7feb352d;
+		x^= x>>>15;
+		x*= 0x846ca68b;
+		x^= x>>>16;
+		return x;
+	}
+
+	/**
+	 * @return how union() picks the new root
+	 */
+	public LinkPolicy getLinkPolicy() {
+		return policy;
+	}
+
+	/**
+	 * This method attaches statistics to the sets. The caller adds every element to the
+	 * statistics under its own index; from then on union() merges the statistics of the
+	 * two roots into the new root, so the statistics of any root describe its whole set
+	 * 
+	 * @param stats the statistics, or null to stop keeping them
+	 */
+	public void setStats(BlobStats stats) {
+		this.stats= stats;
+	}
+
+	/**
+	 * This method gets the statistics attached with setStats()
+	 * 
+	 * @return the statistics by root, or null
+	 */
+	public BlobStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * This method finds a specific set using path halving: every node on the way to the
+	 * root is pointed at its grandparent, in place and without allocating anything
 	 * 
 	 * @param x the set to find
 	 * @return the root of the found set
 	 */
 	public int find(int x) {
-		if(x>=0 && x<sets.size()) {
-		int root=x;
-		ArrayList<Integer> children= new ArrayList<>();
-		while(s[root]>=0) {
-			children.add(root);
-			root=s[root];		
+		if(x>=0 && x<s.length) {
+		if(counting) {
+			return countedFind(x);
 		}
-		for(int i=0; i<children.size();i++) {
-			s[children.get(i)]=root;
+		while(s[x]>=0) {
+			int parent=s[x];
+			if(s[parent]>=0) {
+				s[x]=s[parent];
+			}
+			x=s[x];
 		}
-		
-		return root;
+		return x;
 		}else{
 			throw new IllegalArgumentException();
 		}
 	}
+
+	/**
+	 * This method does the work of find() while counting, kept apart so find() stays as
+	 * small as it was when nothing is counted
+	 * 
+	 * @param x the set to find
+	 * @return the root of the found set
+	 */
+	private int countedFind(int x) {
+		finds++;
+		int steps=0;
+		while(s[x]>=0) {
+			steps++;
+			int parent=s[x];
+			if(s[parent]>=0) {
+				s[x]=s[parent];
+				compressions++;
+			}
+			x=s[x];
+		}
+		findSteps+=steps;
+		pathLengths[Math.min(steps, HISTOGRAM_SIZE-1)]++;
+		return x;
+	}
+
 	/**
-	 * This method gets all the data from a specific set
+	 * This method turns the diagnostics on or off: find() and union() count their calls,
+	 * the parent links find() follows and the ones it rewrites, and the histogram of the
+	 * path lengths of the finds, all starting from 0
+	 * 
+	 * @param counting true to count
+	 */
+	public void setCounting(boolean counting) {
+		this.counting= counting;
+		finds= 0;
+		unions= 0;
+		findSteps= 0;
+		compressions= 0;
+		pathLengths= new long[HISTOGRAM_SIZE];
+	}
+
+	/**
+	 * @return the calls of find() since setCounting(true)
+	 */
+	public long getFindCount() {
+		return finds;
+	}
+
+	/**
+	 * @return the calls of union() since setCounting(true)
+	 */
+	public long getUnionCount() {
+		return unions;
+	}
+
+	/**
+	 * @return the parent links followed by find() since setCounting(true), the path
+	 * length of all the finds together
+	 */
+	public long getFindSteps() {
+		return findSteps;
+	}
+
+	/**
+	 * @return the parent links rewritten by the path halving of find() since
+	 * setCounting(true), the work done to compress the forest
+	 */
+	public long getCompressions() {
+		return compressions;
+	}
+
+	/**
+	 * @return how many finds since setCounting(true) followed 0, 1, 2, ... parent links,
+	 * the last entry counts the finds of 32 links or more
+	 */
+	public long[] getPathLengthHistogram() {
+		return pathLengths.clone();
+	}
+
+	/**
+	 * This method measures the depth of every element in the forest as it is now, the
+	 * number of parent links to its root, without changing the forest. Every depth is
+	 * worked out once, so this takes linear time but also an int per element
+	 * 
+	 * @return the depth of every element
+	 */
+	private int[] depths() {
+		int[] depth= new int[s.length];
+		Arrays.fill(depth, -1);
+		int[] path= new int[16];
+		for(int i=0; i<s.length; i++) {
+			// walk up to a root or an element whose depth is known, then fill in the way back
+			int length=0;
+			int x=i;
+			while(depth[x]<0 && s[x]>=0) {
+				if(length==path.length) {
+					path= Arrays.copyOf(path, length*2);
+				}
+				path[length++]=x;
+				x=s[x];
+			}
+			if(depth[x]<0) {
+				depth[x]=0;
+			}
+			int d=depth[x];
+			while(length>0) {
+				depth[path[--length]]= ++d;
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 * This method counts the elements of the forest as it is now at every depth, in
+	 * linear time. The largest depth is the length of the result minus one, and the
+	 * mean depth follows from the counts, so both come from one walk of the forest
+	 * 
+	 * @return how many elements are 0, 1, 2, ... parent links from their root, up to the deepest
+	 */
+	public long[] getDepthHistogram() {
+		int[] depth= depths();
+		int max=0;
+		for(int d : depth) {
+			max= Math.max(max, d);
+		}
+		long[] histogram= new long[(s.length==0) ? 0 : max+1];
+		for(int d : depth) {
+			histogram[d]++;
+		}
+		return histogram;
+	}
+
+	/**
+	 * This method finds a specific set without changing the forest, for callers that
+	 * only read it
+	 * 
+	 * @param x the set to find
+	 * @return the root of the found set
+	 */
+	public int findNoCompress(int x) {
+		if(x>=0 && x<s.length) {
+		while(s[x]>=0) {
+			x=s[x];
+		}
+		return x;
+		}else{
+			throw new IllegalArgumentException();
+		}
+	}
+	/**
+	 * This method gets all the data from a specific set. Without lazy mode the set is a
+	 * view that walks the chain of members in place, in lazy mode this walks all the
+	 * elements, so use get(int[]) when more than one set is needed
 	 * 
 	 * @param root the root of the sets
 	 * @return A set containing all data
 	 */
 	public Set<T> get(int root) {
 		if(root>=0) {
-		return sets.get(root); 
+		if(next!=null) {
+			return new Set<T>(this, root);
+		}
+		return get(new int[] {root}).get(0);
+		}else{
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method gets all the data from several sets, walking the elements only
+	 * once in lazy mode
+	 * 
+	 * @param roots the roots of the sets
+	 * @return the sets containing all data, in the same order as roots
+	 */
+	public ArrayList<Set<T>> get(int[] roots) {
+		if(roots!=null) {
+		ArrayList<Set<T>> result= new ArrayList<>();
+		if(next!=null) {
+			for(int i=0; i<roots.length; i++) {
+				result.add(get(roots[i]));
+			}
+			return result;
+		}
+		// the roots sorted by index, so each element can look its set up
+		long[] order= new long[roots.length];
+		for(int i=0; i<roots.length; i++) {
+			if(roots[i]<0) {
+				throw new IllegalArgumentException();
+			}
+			order[i]=((long)roots[i]<<32) | i;
+			result.add(new Set<T>());
+		}
+		Arrays.sort(order);
+		int[] sortedRoots= new int[roots.length];
+		for(int i=0; i<roots.length; i++) {
+			sortedRoots[i]=(int)(order[i]>>>32);
+		}
+		for(int i=0; i<s.length; i++) {
+			int index= Arrays.binarySearch(sortedRoots, find(i));
+			if(index>=0) {
+				result.get((int)order[index]).add(data.get(i));
+			}
+		}
+		return result;
+		}else{
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * This method checks if an element is the root of its set
+	 * 
+	 * @param x the element
+	 * @return true if x is a root
+	 */
+	public boolean isRoot(int x) {
+		if(x>=0 && x<s.length) {
+		return s[x]<0;
+		}else{
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method gets the smallest element of a specific set, which does not depend on
+	 * which root union() picked
+	 * 
+	 * @param root the root of the set
+	 * @return the index of the smallest element in the set
+	 */
+	public int first(int root) {
+		if(root>=0 && root<s.length && s[root]<0) {
+		return first[root];
 		}else{
 			throw new IllegalArgumentException();
 		}
 	}
+
+	/**
+	 * This method gets the number of elements in a specific set
+	 * 
+	 * @param root the root of the set
+	 * @return the number of elements in the set
+	 */
+	public int size(int root) {
+		if(root>=0 && root<s.length && s[root]<0) {
+		return -s[root];
+		}else{
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param root an element
+	 * @return the first member of the set of root, root itself, or -1 if it is not a root
+	 */
+	int firstMember(int root) {
+		return (s[root]<0) ? root : -1;
+	}
+
+	/**
+	 * @param x a member of a set
+	 * @return the member after x in its set, or -1 if x is the last one
+	 */
+	int nextMember(int x) {
+		return next[x];
+	}
+
+	/**
+	 * @param x an element
+	 * @return the data of x
+	 */
+	T member(int x) {
+		return data.get(x);
+	}
+
+	/**
+	 * @param root an element
+	 * @return the number of members of the set of root, 0 if it is not a root
+	 */
+	int memberCount(int root) {
+		return (s[root]<0) ? -s[root] : 0;
+	}
 	
 	//main method just for testing
 	public static void main(String[] args) {
@@ -130,5 +543,31 @@ public class DisjointSets<T>
 		System.out.println(ds.get(0)); //should be [0, 1, 2]
 		System.out.println(ds.get(1)); //should be []
 		System.out.println(ds.get(3)); //should be [3]
+		System.out.println("-----");
+		DisjointSets<Integer> lazy = new DisjointSets<>(arr, true);
+		System.out.println(lazy.union(lazy.find(0), lazy.find(1))); //should be 0
+		System.out.println(lazy.union(lazy.find(2), lazy.find(0))); //should be 0
+		System.out.println(lazy.size(0)); //should be 3
+		System.out.println(lazy.get(new int[] {3, 0})); //should be [[3], [0, 1, 2]]
+		System.out.println("-----");
+		for(LinkPolicy policy : LinkPolicy.values()) {
+			DisjointSets<Integer> linked = new DisjointSets<>(arr, true, policy);
+			linked.setCounting(true);
+			for(int i = 1; i < 10; i++)
+				linked.union(linked.find(i - 1), linked.find(i));
+			long[] histogram = linked.getPathLengthHistogram();
+			long total = 0;
+			for(long count : histogram)
+				total += count;
+			boolean counted = total == linked.getFindCount();
+			long[] depths = linked.getDepthHistogram();
+			long depthSum = 0;
+			for(int d = 0; d < depths.length; d++)
+				depthSum += d * depths[d];
+			boolean shallow = depths.length >= 2 && depthSum < (depths.length - 1) * 10L;
+			//should be POLICY 10 true true 0, the smallest element is the same whatever the root
+			System.out.println(policy + " " + linked.size(linked.find(7)) + " " + counted
+					+ " " + shallow + " " + linked.first(linked.find(7)));
+		}
 	}
 }
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * Thresholds, labels and measures the blobs of an image in a single raster scan,
+ * without changing the image.
+ *
+ * Each pixel is compared to the blob color once. Matching pixels get a provisional
+ * label like in TwoPassLabeler, and are counted into the area and bounding box of that
+ * label right away, together with its position and color sums. Once the scan is done
+ * the equivalence table is resolved and the statistics of every provisional label are
+ * merged into its root label, so the blobs are known without looking at the pixels
+ * again.
+ *
+ */
+public class FusedLabeler {
+	private int width; // the width of the image
+	private int[] labels; // the provisional label of every pixel, 0 for the background
+	private int[] equivalences; // the root label of every provisional label
+	private int labelCount; // the number of provisional labels, including 0
+	private BlobStats stats; // the statistics of every root label
+
+	/**
+	 * This method labels the pixels of an image that match the color to be detected
+	 *
+	 * @param pixels the image as packed RGB values, one row after another, left unchanged
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param matcher decides which pixels are close enough to the color to be detected
+	 * @return the labeled blobs
+	 */
+	public static FusedLabeler label(int[] pixels, int width, int height, ColorMatcher matcher) {
+		if (pixels != null && matcher != null && width >= 0 && height >= 0 && pixels.length >= width * height) {
+			FusedLabeler result = new FusedLabeler();
+			int[] labels = new int[width * height];
+			int[] equivalences = new int[64];
+			int nextLabel = 1;
+			BlobStats stats = new BlobStats(64);
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int current = y * width + x;
+					if (!matcher.matches(pixels[current])) {
+						continue;
+					}
+					int above = (y > 0) ? labels[current - width] : 0;
+					int left = (x > 0) ? labels[current - 1] : 0;
+					int label;
+					if (above == 0 && left == 0) {
+						if (nextLabel == equivalences.length) {
+							equivalences = Arrays.copyOf(equivalences, equivalences.length * 2);
+						}
+						equivalences[nextLabel] = nextLabel;
+						label = nextLabel++;
+					} else if (above == 0 || left == 0 || above == left) {
+						label = (above != 0) ? above : left;
+					} else {
+						label = TwoPassLabeler.merge(equivalences, above, left);
+					}
+					labels[current] = label;
+					stats.add(label, x, y, pixels[current]);
+				}
+			}
+
+			// links always point to a smaller label, so one ascending sweep resolves them
+			for (int l = 1; l < nextLabel; l++) {
+				equivalences[l] = equivalences[equivalences[l]];
+				stats.merge(equivalences[l], l);
+			}
+
+			result.width = width;
+			result.labels = labels;
+			result.equivalences = equivalences;
+			result.labelCount = nextLabel;
+			result.stats = stats;
+			return result;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method gets the root labels of all blobs, in raster order of their first pixel
+	 *
+	 * @return the root labels
+	 */
+	public int[] getBlobs() {
+		int[] blobs = new int[labelCount];
+		int blobCount = 0;
+		for (int l = 1; l < labelCount; l++) {
+			if (equivalences[l] == l) {
+				blobs[blobCount++] = l;
+			}
+		}
+		return Arrays.copyOf(blobs, blobCount);
+	}
+
+	/**
+	 * This method gets the blob of a pixel
+	 *
+	 * @param x the x of the pixel
+	 * @param y the y of the pixel
+	 * @return the root label of the blob, or 0 if the pixel is background
+	 */
+	public int getBlob(int x, int y) {
+		return equivalences[labels[y * width + x]];
+	}
+
+	/**
+	 * This method gets the number of labels, every root label is smaller than this
+	 *
+	 * @return the number of labels
+	 */
+	public int getLabelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * This method gets the area, bounding box, centroid and mean color of the blobs,
+	 * by root label
+	 *
+	 * @return the statistics of the blobs
+	 */
+	public BlobStats getStats() {
+		return stats;
+	}
+}
@@ -0,0 +1,359 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Thresholds and labels an image in horizontal strips on a fork-join pool.
+ *
+ * Every strip is labeled on its own task into one shared ConcurrentDisjointSets. The
+ * components that meet at the seams between strips are then unioned, one task per
+ * seam, and the sets are flattened into the same encoding as PixelLabeler: the root of
+ * a blob is its first pixel in raster order, and every other pixel of the blob points
+ * straight at it.
+ *
+ * segment() does the same without thresholding: neighboring pixels are unioned when
+ * their colors are close enough, so every region of the image gets a set.
+ *
+ */
+public class ParallelLabeler {
+	/**
+	 * This method thresholds the pixels of an image in parallel, recoloring them black
+	 * when they match the color to be detected and white otherwise
+	 *
+	 * @param pixels the image as packed RGB values, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param matcher decides which pixels are close enough to the color to be detected
+	 * @param pool the pool running the strips
+	 */
+	public static void thresh(final int[] pixels, final int width, final int height, final ColorMatcher matcher,
+			ForkJoinPool pool) {
+		if (pixels != null && matcher != null && pool != null && pixels.length >= width * height) {
+			final int strips = stripCount(height, pool);
+			forEachStrip(pool, strips, new IntConsumer() {
+				public void accept(int strip) {
+					matcher.threshold(pixels, stripStart(strip, height, strips) * width,
+							stripStart(strip + 1, height, strips) * width);
+				}
+			});
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method labels the black pixels of an image thresholded by thresh() in parallel
+	 *
+	 * @param pixels the thresholded image as packed RGB values, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param pool the pool running the strips
+	 * @return the union-find forest of the pixels, fully compressed
+	 */
+	public static int[] label(final int[] pixels, final int width, final int height, ForkJoinPool pool) {
+		if (pixels != null && width >= 0 && height >= 0 && pool != null && pixels.length >= width * height) {
+			final int white = Color.WHITE.getRGB();
+			final ConcurrentDisjointSets sets = new ConcurrentDisjointSets(width * height);
+			final int strips = stripCount(height, pool);
+
+			// label every strip on its own
+			forEachStrip(pool, strips, new IntConsumer() {
+				public void accept(int strip) {
+					int startRow = stripStart(strip, height, strips);
+					int endRow = stripStart(strip + 1, height, strips);
+					for (int y = startRow; y < endRow; y++) {
+						for (int x = 0; x < width; x++) {
+							int current = y * width + x;
+							if (pixels[current] == white) {
+								continue;
+							}
+							if (y > startRow && pixels[current - width] != white) {
+								sets.union(current, current - width);
+							}
+							if (x > 0 && pixels[current - 1] != white) {
+								sets.union(current, current - 1);
+							}
+						}
+					}
+				}
+			});
+
+			// merge the components across the seams, seams of neighboring strips share sets
+			forEachStrip(pool, strips - 1, new IntConsumer() {
+				public void accept(int seam) {
+					int row = stripStart(seam + 1, height, strips);
+					for (int x = 0; x < width; x++) {
+						int current = row * width + x;
+						if (pixels[current] != white && pixels[current - width] != white) {
+							sets.union(current, current - width);
+						}
+					}
+				}
+			});
+
+			return flatten(sets, width * height);
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method labels every region of an unthresholded image in parallel: two pixels
+	 * that are above or beside each other are in the same region when getDifference() of
+	 * their colors is at most okDist. Unlike PixelLabeler the pixels are compared with
+	 * each other and not with the root of the set, so the regions do not depend on the
+	 * order of the unions
+	 *
+	 * @param pixels the image as packed RGB values, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param okDist accepted difference between two neighboring pixels
+	 * @param pool the pool running the strips
+	 * @return the union-find forest of the pixels, fully compressed
+	 */
+	public static int[] segment(final int[] pixels, final int width, final int height, int okDist,
+			ForkJoinPool pool) {
+		if (pixels != null && width >= 0 && height >= 0 && okDist >= 0 && pool != null
+				&& pixels.length >= width * height) {
+			final int maxSquaredDistance = Detector.maxSquaredDistance(okDist);
+			final ConcurrentDisjointSets sets = new ConcurrentDisjointSets(width * height);
+			final int strips = stripCount(height, pool);
+
+			// segment every strip on its own
+			forEachStrip(pool, strips, new IntConsumer() {
+				public void accept(int strip) {
+					int startRow = stripStart(strip, height, strips);
+					int endRow = stripStart(strip + 1, height, strips);
+					for (int y = startRow; y < endRow; y++) {
+						for (int x = 0; x < width; x++) {
+							int current = y * width + x;
+							if (y > startRow && close(pixels[current], pixels[current - width], maxSquaredDistance)) {
+								sets.union(current, current - width);
+							}
+							if (x > 0 && close(pixels[current], pixels[current - 1], maxSquaredDistance)) {
+								sets.union(current, current - 1);
+							}
+						}
+					}
+				}
+			});
+
+			// merge the regions across the seams
+			forEachStrip(pool, strips - 1, new IntConsumer() {
+				public void accept(int seam) {
+					int row = stripStart(seam + 1, height, strips);
+					for (int x = 0; x < width; x++) {
+						int current = row * width + x;
+						if (close(pixels[current], pixels[current - width], maxSquaredDistance)) {
+							sets.union(current, current - width);
+						}
+					}
+				}
+			});
+
+			return flatten(sets, width * height);
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method checks if two colors are close enough to be in the same region, the
+	 * same as Detector.getDifference(rgb1, rgb2) <= okDist
+	 *
+	 * @param rgb1 the first color as a packed RGB value
+	 * @param rgb2 the second color as a packed RGB value
+	 * @param maxSquaredDistance see Detector.maxSquaredDistance(okDist)
+	 * @return true if the squared distance of the colors is at most maxSquaredDistance
+	 */
+	private static boolean close(int rgb1, int rgb2, int maxSquaredDistance) {
+		int dr = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+		int dg = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+		int db = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+		return dr * dr + dg * dg + db * db <= maxSquaredDistance;
+	}
+
+	/**
+	 * This method flattens the sets into a union-find forest in the encoding of PixelLabeler
+	 *
+	 * @param sets the sets of the pixels
+	 * @param size the number of pixels
+	 * @return the forest, every pixel points straight at the first pixel of its set
+	 */
+	private static int[] flatten(ConcurrentDisjointSets sets, int size) {
+		// roots are the smallest element of their set, so they are always flattened first
+		int[] parent = new int[size];
+		for (int i = 0; i < parent.length; i++) {
+			int root = sets.find(i);
+			if (root == i) {
+				parent[i] = -1;
+			} else {
+				parent[i] = root;
+				parent[root]--;
+			}
+		}
+		return parent;
+	}
+
+	/**
+	 * This method picks the number of strips, a few per worker so the pool can balance them
+	 *
+	 * @param height the height of the image
+	 * @param pool the pool running the strips
+	 * @return the number of strips
+	 */
+	private static int stripCount(int height, ForkJoinPool pool) {
+		return Math.max(1, Math.min(height, pool.getParallelism() * 4));
+	}
+
+	/**
+	 * This method calculates the first row of a strip
+	 *
+	 * @param strip the strip index, or the number of strips for the end of the image
+	 * @param height the height of the image
+	 * @param strips the number of strips
+	 * @return the first row of the strip
+	 */
+	private static int stripStart(int strip, int height, int strips) {
+		return (int) ((long) strip * height / strips);
+	}
+
+	/**
+	 * This method runs the body once per strip on the pool and waits for all of them
+	 *
+	 * @param pool the pool running the strips
+	 * @param strips the number of strips
+	 * @param body the work for one strip
+	 */
+	private static void forEachStrip(ForkJoinPool pool, int strips, IntConsumer body) {
+		pool.invoke(new StripTask(body, 0, strips));
+	}
+
+	/**
+	 * Splits a range of strips in halves until every task runs a single strip
+	 */
+	private static class StripTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IntConsumer body;
+		private final int from;
+		private final int to;
+
+		public StripTask(IntConsumer body, int from, int to) {
+			this.body = body;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (this.to - this.from <= 1) {
+				for (int strip = this.from; strip < this.to; strip++) {
+					this.body.accept(strip);
+				}
+			} else {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new StripTask(this.body, this.from, mid), new StripTask(this.body, mid, this.to));
+			}
+		}
+	}
+
+	// main method just for testing: compares label() with TwoPassLabeler and segment() with
+	// a flood fill of the same regions, for pools with 1 to 8 workers so the images are cut
+	// into 4 to 32 strips, including images with fewer rows than strips and images of a single row
+	public static void main(String[] args) {
+		int[] widths = { 1, 2, 7, 33, 64 };
+		int[] heights = { 1, 2, 3, 5, 17, 40 };
+		int[] okDists = { 0, 10, 40 };
+		// a few colors and some noise on them, so okDist decides which neighbors join
+		int[] palette = { 0xFFFFFF, 0x000000, 0xC81E28, 0x1E28C8 };
+		int black = Color.BLACK.getRGB();
+		int white = Color.WHITE.getRGB();
+		Random random = new Random(42);
+		int images = 0;
+		for (int workers = 1; workers <= 8; workers++) {
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			for (int width : widths) {
+				for (int height : heights) {
+					for (int round = 0; round < 2; round++) {
+						int okDist = okDists[random.nextInt(okDists.length)];
+						int[] pixels = new int[width * height];
+						for (int i = 0; i < pixels.length; i++) {
+							int noise = random.nextInt(4) == 0 ? random.nextInt(16) : 0;
+							pixels[i] = palette[random.nextInt(palette.length)] ^ (noise << 8) ^ noise;
+						}
+						int[] expected = floodFill(pixels, width, height, okDist);
+						int[] forest = segment(pixels, width, height, okDist, pool);
+						if (!Arrays.equals(forest, expected)) {
+							throw new IllegalStateException("! Error: the regions differ for " + width + "x" + height
+									+ " at distance " + okDist + " with " + workers + " workers");
+						}
+
+						// random blobs, or 2x2 squares with gaps that are all the same size
+						int[] thresholded = new int[width * height];
+						Arrays.fill(thresholded, white);
+						for (int y = 0; y < height; y++) {
+							for (int x = 0; x < width; x++) {
+								boolean square = (x % 3 < 2) && (y % 3 < 2) && (x + 1 < width || x % 3 == 1)
+										&& (y + 1 < height || y % 3 == 1);
+								if ((round == 0) ? random.nextInt(3) == 0 : square) {
+									thresholded[y * width + x] = black;
+								}
+							}
+						}
+						int[] twoPass = TwoPassLabeler.label(thresholded.clone(), width, height);
+						if (!Arrays.equals(label(thresholded, width, height, pool), twoPass)) {
+							throw new IllegalStateException("! Error: the blobs differ from TwoPassLabeler for " + width + "x"
+									+ height + " in round " + round + " with " + workers + " workers");
+						}
+						images++;
+					}
+				}
+			}
+			pool.shutdown();
+		}
+		System.out.println(images + " images, same blobs as TwoPassLabeler and same regions as a flood fill");
+	}
+
+	/**
+	 * This method labels the regions of an image one at a time, in the encoding of flatten()
+	 *
+	 * @param pixels the image as packed RGB values, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param okDist accepted difference between two neighboring pixels
+	 * @return the forest, every pixel points straight at the first pixel of its region
+	 */
+	private static int[] floodFill(int[] pixels, int width, int height, int okDist) {
+		int[] parent = new int[width * height];
+		boolean[] done = new boolean[width * height];
+		int[] stack = new int[width * height];
+		for (int root = 0; root < parent.length; root++) {
+			if (done[root]) {
+				continue;
+			}
+			done[root] = true;
+			parent[root] = -1;
+			int size = 0;
+			stack[size++] = root;
+			while (size > 0) {
+				int current = stack[--size];
+				int x = current % width;
+				int y = current / width;
+				int[] neighbors = { (x > 0) ? current - 1 : -1, (x < width - 1) ? current + 1 : -1,
+						(y > 0) ? current - width : -1, (y < height - 1) ? current + width : -1 };
+				for (int neighbor : neighbors) {
+					if (neighbor >= 0 && !done[neighbor]
+							&& Detector.getDifference(pixels[current], pixels[neighbor]) <= okDist) {
+						done[neighbor] = true;
+						parent[neighbor] = root;
+						parent[root]--;
+						stack[size++] = neighbor;
+					}
+				}
+			}
+		}
+		return parent;
+	}
+}
@@ -0,0 +1,266 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Labels a thresholded image using a union-find forest stored in a plain int array
+ * instead of a DisjointSets of Pixel objects.
+ *
+ * Element i of the forest is the pixel with id i (y * width + x) and the encoding is
+ * the same as in DisjointSets: a negative entry marks a root and holds minus the size
+ * of its set, any other entry is the parent of that pixel.
+ *
+ */
+public class PixelLabeler {
+	/**
+	 * This method labels the pixels of a thresholded image. It walks the image in the
+	 * same order as Detector.detect() and performs the same finds and unions, so every
+	 * pixel ends up under the same root as it would in the DisjointSets version
+	 *
+	 * @param pixels the thresholded image as packed RGB values, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param okDist accepted difference between two neighboring pixels
+	 * @return the union-find forest of the pixels
+	 */
+	public static int[] label(int[] pixels, int width, int height, int okDist) {
+		if (pixels != null && width >= 0 && height >= 0 && pixels.length >= width * height) {
+			int[] parent = new int[width * height];
+			for (int i = 0; i < parent.length; i++) {
+				parent[i] = -1;
+			}
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int current = y * width + x;
+					// both neighbors are resolved before anything is unioned, like getNeighborSets()
+					int aboveRoot = (y > 0) ? find(parent, current - width) : -1;
+					int leftRoot = (x > 0) ? find(parent, current - 1) : -1;
+					if (aboveRoot >= 0 && Detector.getDifference(pixels[aboveRoot], pixels[current]) <= okDist) {
+						int root1 = find(parent, current);
+						if (root1 != aboveRoot) {
+							union(parent, root1, aboveRoot);
+						}
+					}
+					if (leftRoot >= 0 && Detector.getDifference(pixels[leftRoot], pixels[current]) <= okDist) {
+						int root1 = find(parent, current);
+						if (root1 != leftRoot) {
+							union(parent, root1, leftRoot);
+						}
+					}
+				}
+			}
+			return parent;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method finds the root of a pixel and compresses the path to it in place
+	 *
+	 * @param parent the union-find forest
+	 * @param x the pixel id
+	 * @return the root of the set containing x
+	 */
+	public static int find(int[] parent, int x) {
+		int root = x;
+		while (parent[root] >= 0) {
+			root = parent[root];
+		}
+		while (parent[x] >= 0 && parent[x] != root) {
+			int next = parent[x];
+			parent[x] = root;
+			x = next;
+		}
+		return root;
+	}
+
+	/**
+	 * This method computes the union of two sets by size, with the same tie breaking
+	 * as DisjointSets.union()
+	 *
+	 * @param parent the union-find forest
+	 * @param root1 the root of the first set
+	 * @param root2 the root of the second set
+	 * @return the new root of the unioned sets
+	 */
+	public static int union(int[] parent, int root1, int root2) {
+		if (parent[root1] <= parent[root2]) {
+			parent[root1] += parent[root2];
+			parent[root2] = root1;
+			return root1;
+		} else {
+			parent[root2] += parent[root1];
+			parent[root1] = root2;
+			return root2;
+		}
+	}
+
+	// main method just for testing: runs the DISJOINT_SETS and PRIMITIVE modes of Detector
+	// on random images with many blobs of the same size, and checks that both write the same
+	// results and rank the blobs by size and then by the root of this forest
+	public static void main(String[] args) throws IOException {
+		int red = Color.RED.getRGB();
+		int white = Color.WHITE.getRGB();
+		int black = Color.BLACK.getRGB();
+		int[] widths = { 1, 5, 8, 31 };
+		int[] heights = { 1, 6, 20 };
+		double[] densities = { 0.25, 0.5 };
+		Random random = new Random(42);
+		File input = File.createTempFile("primitive", ".png");
+		input.deleteOnExit();
+		File[] outputs = new File[4];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = File.createTempFile("primitive_blob", ".png");
+			outputs[i].deleteOnExit();
+		}
+		int images = 0;
+		for (int width : widths) {
+			for (int height : heights) {
+				for (double density : densities) {
+					for (int round = 0; round < 9; round++) {
+						int[] pixels = new int[width * height];
+						Arrays.fill(pixels, white);
+						if (round < 8) {
+							for (int i = 0; i < pixels.length; i++) {
+								if (random.nextDouble() < density) {
+									pixels[i] = red;
+								}
+							}
+						} else {
+							// 2x2 squares with gaps, all of them tied
+							for (int y = random.nextInt(2); y + 1 < height; y += 3) {
+								for (int x = random.nextInt(2); x + 1 < width; x += 3) {
+									pixels[y * width + x] = pixels[y * width + x + 1] = red;
+									pixels[(y + 1) * width + x] = pixels[(y + 1) * width + x + 1] = red;
+								}
+							}
+						}
+						BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+						image.setRGB(0, 0, width, height, pixels, 0, width);
+						ImageIO.write(image, "png", input);
+						int k = 3 + 2 * (round % 2);
+						for (File output : outputs) {
+							// no bounding box is saved when there is no blob
+							output.delete();
+						}
+
+						ByteArrayOutputStream setsPrinted = new ByteArrayOutputStream();
+						PrintStream setsOut = new PrintStream(setsPrinted, true);
+						Detector sets = new Detector(input.getPath(), Color.RED, 0);
+						sets.setKeepBlobStats(true);
+						sets.setOutput(setsOut);
+						sets.detect();
+						sets.outputResults(outputs[0].getPath(), outputs[1].getPath(), k);
+						ByteArrayOutputStream details = new ByteArrayOutputStream();
+						sets.printBlobDetails(new PrintStream(details, true));
+
+						ByteArrayOutputStream primitivePrinted = new ByteArrayOutputStream();
+						PrintStream primitiveOut = new PrintStream(primitivePrinted, true);
+						Detector primitive = new Detector(input.getPath(), Color.RED, 0);
+						primitive.setMode(Detector.Mode.PRIMITIVE);
+						primitive.setOutput(primitiveOut);
+						primitive.detect();
+						primitive.outputResults(outputs[2].getPath(), outputs[3].getPath(), k);
+
+						String where = width + "x" + height + " at density " + density + " in round " + round;
+						if (!blobLines(setsPrinted).equals(blobLines(primitivePrinted))
+								|| !sameImage(outputs[0], outputs[2]) || !sameImage(outputs[1], outputs[3])) {
+							throw new IllegalStateException("! Error: PRIMITIVE differs from DISJOINT_SETS for " + where);
+						}
+
+						// the blobs ranked by size and then by root
+						int[] thresholded = new int[pixels.length];
+						for (int i = 0; i < pixels.length; i++) {
+							thresholded[i] = (pixels[i] == red) ? black : white;
+						}
+						int[] parent = label(thresholded, width, height, 0);
+						ArrayList<Long> roots = new ArrayList<>();
+						for (int i = 0; i < parent.length; i++) {
+							if (parent[i] < 0 && thresholded[i] == black) {
+								roots.add(((long) parent[i] << 32) | i);
+							}
+						}
+						Collections.sort(roots);
+						StringBuilder expected = new StringBuilder();
+						for (int rank = 0; rank < Math.min(k, roots.size()); rank++) {
+							int root = (int) (long) roots.get(rank);
+							int minX = width;
+							int minY = height;
+							int maxX = -1;
+							int maxY = -1;
+							long sumX = 0;
+							long sumY = 0;
+							for (int i = 0; i < parent.length; i++) {
+								if (find(parent, i) == root) {
+									minX = Math.min(minX, i % width);
+									minY = Math.min(minY, i / width);
+									maxX = Math.max(maxX, i % width);
+									maxY = Math.max(maxY, i / width);
+									sumX += i % width;
+									sumY += i / width;
+								}
+							}
+							int area = -parent[root];
+							expected.append("Blob " + (rank + 1) + ": box (" + minX + "," + minY + ")-(" + maxX + ","
+									+ maxY + ") centroid ("
+									+ String.format("%.1f,%.1f", (double) sumX / area, (double) sumY / area) + ")\n");
+						}
+						if (!details.toString().replaceAll(" mean color \\([0-9,]*\\)", "").replace("\r", "")
+								.equals(expected.toString())) {
+							throw new IllegalStateException("! Error: DISJOINT_SETS ranks the blobs\n" + details
+									+ "instead of\n" + expected + "for " + where);
+						}
+						images++;
+					}
+				}
+			}
+		}
+		System.out.println(images + " images, PRIMITIVE the same as DISJOINT_SETS");
+	}
+
+	/**
+	 * This method keeps the lines about blobs, without the lines about saved images
+	 *
+	 * @param printed what outputResults() printed
+	 * @return the lines about blobs
+	 */
+	private static String blobLines(ByteArrayOutputStream printed) {
+		StringBuilder lines = new StringBuilder();
+		for (String line : printed.toString().split("\\r?\\n")) {
+			if (!line.startsWith("- ")) {
+				lines.append(line).append('\n');
+			}
+		}
+		return lines.toString();
+	}
+
+	/**
+	 * @param file1 an image
+	 * @param file2 another image
+	 * @return true if both images have the same pixels, or neither was saved
+	 * @throws IOException if an image cannot be read
+	 */
+	private static boolean sameImage(File file1, File file2) throws IOException {
+		if (!file1.exists() || !file2.exists()) {
+			return file1.exists() == file2.exists();
+		}
+		BufferedImage image1 = ImageIO.read(file1);
+		BufferedImage image2 = ImageIO.read(file2);
+		int width = image1.getWidth();
+		int height = image1.getHeight();
+		return width == image2.getWidth() && height == image2.getHeight()
+				&& Arrays.equals(image1.getRGB(0, 0, width, height, null, 0, width),
+						image2.getRGB(0, 0, width, height, null, 0, width));
+	}
+}
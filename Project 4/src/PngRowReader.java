@@ -0,0 +1,387 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decodes a PNG file one row at a time, in a single pass over the file.
+ *
+ * The image data of a PNG is one zlib stream split over IDAT chunks, and every row is
+ * filtered against the row above it, so a row can only be decoded after all the rows
+ * above it. ImageIO decodes them all again for every source region it is asked for;
+ * this reader keeps the inflater and the previous row instead, so reading the whole
+ * image band by band costs one decode and memory for two rows.
+ *
+ * Only the layouts that ImageIO turns into the same colors without any conversion are
+ * read: non-interlaced RGB and RGBA with 8 bits per channel, and palette images. open()
+ * returns null for the others, like grayscale, 16 bits, Adam7 interlacing or an embedded
+ * ICC profile, so the caller can fall back to ImageIO.
+ *
+ */
+public class PngRowReader implements Closeable {
+	private static final long SIGNATURE = 0x89504E470D0A1A0AL; // the first 8 bytes of every PNG
+	private static final int IHDR = 0x49484452;
+	private static final int PLTE = 0x504C5445;
+	private static final int IDAT = 0x49444154;
+	private static final int ICCP = 0x69434350;
+
+	private DataInputStream file; // the file, at the next chunk or inside an IDAT
+	private DataInputStream data; // the inflated rows, with the filter byte first
+	private int width;
+	private int height;
+	private int bitDepth; // the bits per sample
+	private int colorType; // 2 for RGB, 3 for palette, 6 for RGBA
+	private int[] palette = new int[0]; // the packed RGB of every palette entry
+	private int pixelBytes; // the bytes of a pixel, at least 1, as used by the filters
+	private byte[] row; // the filter byte and the current row
+	private byte[] previous; // the filter byte and the row above, zero above the first row
+	private int rowsRead; // the number of rows decoded so far
+
+	/**
+	 * Initialize the reader
+	 *
+	 * @param file the file, just after the signature
+	 */
+	private PngRowReader(DataInputStream file) {
+		this.file = file;
+	}
+
+	/**
+	 * This method opens a PNG file and reads the chunks up to the first IDAT
+	 *
+	 * @param fileName the name of the file
+	 * @return the reader, at the first row, or null if the file is not a PNG this reader
+	 *         can decode
+	 * @throws IOException if the file cannot be read or is a broken PNG
+	 */
+	public static PngRowReader open(String fileName) throws IOException {
+		DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+		PngRowReader reader = new PngRowReader(file);
+		boolean readable = false;
+		try {
+			readable = reader.readHeader();
+		} catch (EOFException e) {
+			throw new IOException("! Error: " + fileName + " is a broken PNG");
+		} finally {
+			if (!readable) {
+				file.close();
+			}
+		}
+		return readable ? reader : null;
+	}
+
+	/**
+	 * This method reads the signature and the chunks before the image data
+	 *
+	 * @return true if the image can be decoded
+	 * @throws IOException if the file cannot be read or is a broken PNG
+	 */
+	private boolean readHeader() throws IOException {
+		long signature = 0;
+		for (int i = 0; i < 8; i++) {
+			int b = file.read();
+			if (b < 0) {
+				// too short to be a PNG
+				return false;
+			}
+			signature = (signature << 8) | b;
+		}
+		if (signature != SIGNATURE || file.readInt() != 13 || file.readInt() != IHDR) {
+			return false;
+		}
+		width = file.readInt();
+		height = file.readInt();
+		bitDepth = file.readUnsignedByte();
+		colorType = file.readUnsignedByte();
+		int compression = file.readUnsignedByte();
+		int filter = file.readUnsignedByte();
+		int interlace = file.readUnsignedByte();
+		file.readInt(); // the CRC
+		boolean truecolor = (colorType == 2 || colorType == 6) && bitDepth == 8;
+		boolean indexed = colorType == 3 && (bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8);
+		if (width <= 0 || height <= 0 || compression != 0 || filter != 0 || interlace != 0 || !(truecolor || indexed)) {
+			return false;
+		}
+		int channels = (colorType == 2) ? 3 : (colorType == 6) ? 4 : 1;
+		long rowBytes = ((long) width * channels * bitDepth + 7) / 8;
+		if (rowBytes + 1 > Integer.MAX_VALUE - 8) {
+			return false;
+		}
+		pixelBytes = Math.max(1, channels * bitDepth / 8);
+		row = new byte[(int) rowBytes + 1];
+		previous = new byte[(int) rowBytes + 1];
+
+		while (true) {
+			int length = file.readInt();
+			int type = file.readInt();
+			if (length < 0) {
+				throw new IOException("! Error: a PNG chunk is too long");
+			}
+			if (type == IDAT) {
+				data = new DataInputStream(new InflaterInputStream(new ImageData(length), new Inflater(), 1 << 16));
+				return colorType != 3 || palette.length > 0;
+			} else if (type == ICCP) {
+				// ImageIO may convert the colors through the profile
+				return false;
+			} else if (type == PLTE && length % 3 == 0) {
+				palette = new int[length / 3];
+				for (int i = 0; i < palette.length; i++) {
+					palette[i] = (file.readUnsignedByte() << 16) | (file.readUnsignedByte() << 8) | file.readUnsignedByte();
+				}
+				file.readInt();
+			} else {
+				skip(length + 4L);
+			}
+		}
+	}
+
+	/**
+	 * This method skips bytes of the file
+	 *
+	 * @param bytes the number of bytes
+	 * @throws IOException if the file ends first
+	 */
+	private void skip(long bytes) throws IOException {
+		while (bytes > 0) {
+			int skipped = file.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			bytes -= skipped;
+		}
+	}
+
+	/**
+	 * The payload of the IDAT chunks as one stream, the chunk headers and CRCs left out
+	 */
+	private class ImageData extends InputStream {
+		private int remaining; // the bytes left in the current IDAT, -1 after the last one
+
+		public ImageData(int length) {
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (remaining == 0) {
+				// the CRC of this chunk, then the next one has to be an IDAT as well
+				file.readInt();
+				int length = file.readInt();
+				if (file.readInt() != IDAT) {
+					remaining = -1;
+				} else if (length < 0) {
+					throw new IOException("! Error: a PNG chunk is too long");
+				} else {
+					remaining = length;
+				}
+			}
+			if (remaining < 0) {
+				return -1;
+			}
+			int count = file.read(b, off, Math.min(len, remaining));
+			if (count < 0) {
+				throw new EOFException();
+			}
+			remaining -= count;
+			return count;
+		}
+	}
+
+	/**
+	 * @return the width of the image
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the image
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * This method decodes the next rows of the image as packed RGB pixels, the alpha byte
+	 * is always 0xFF
+	 *
+	 * @param pixels gets the rows, one after another
+	 * @param rows the number of rows, at most the rows that are left
+	 * @throws IOException if the file cannot be read or is a broken PNG
+	 */
+	public void readRows(int[] pixels, int rows) throws IOException {
+		if (pixels != null && rows >= 0 && rows <= height - rowsRead && pixels.length >= (long) rows * width) {
+			for (int r = 0; r < rows; r++) {
+				try {
+					data.readFully(row);
+				} catch (EOFException e) {
+					throw new IOException("! Error: the PNG ends before row " + rowsRead);
+				}
+				unfilter();
+				convert(pixels, r * width);
+				byte[] temp = previous;
+				previous = row;
+				row = temp;
+				rowsRead++;
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method undoes the filter of the current row, see the PNG specification
+	 */
+	private void unfilter() throws IOException {
+		int filter = row[0];
+		int length = row.length;
+		int bpp = pixelBytes;
+		switch (filter) {
+		case 0:
+			break;
+		case 1: // sub
+			for (int i = 1 + bpp; i < length; i++) {
+				row[i] += row[i - bpp];
+			}
+			break;
+		case 2: // up
+			for (int i = 1; i < length; i++) {
+				row[i] += previous[i];
+			}
+			break;
+		case 3: // average
+			for (int i = 1; i < length; i++) {
+				int left = (i > bpp) ? row[i - bpp] & 0xFF : 0;
+				row[i] += (left + (previous[i] & 0xFF)) >>> 1;
+			}
+			break;
+		case 4: // paeth
+			for (int i = 1; i < length; i++) {
+				int a = (i > bpp) ? row[i - bpp] & 0xFF : 0;
+				int b = previous[i] & 0xFF;
+				int c = (i > bpp) ? previous[i - bpp] & 0xFF : 0;
+				int p = a + b - c;
+				int pa = Math.abs(p - a);
+				int pb = Math.abs(p - b);
+				int pc = Math.abs(p - c);
+				row[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+			}
+			break;
+		default:
+			throw new IOException("! Error: unknown PNG filter " + filter + " in row " + rowsRead);
+		}
+	}
+
+	/**
+	 * This method turns the unfiltered row into packed RGB pixels
+	 *
+	 * @param pixels gets the row
+	 * @param offset the index of the first pixel of the row in pixels
+	 */
+	private void convert(int[] pixels, int offset) {
+		int opaque = 0xFF000000;
+		if (colorType != 3) {
+			int stride = (colorType == 6) ? 4 : 3;
+			for (int x = 0, i = 1; x < width; x++, i += stride) {
+				pixels[offset + x] = opaque | ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+			}
+		} else {
+			int perByte = 8 / bitDepth;
+			int mask = (1 << bitDepth) - 1;
+			for (int x = 0; x < width; x++) {
+				int shift = 8 - bitDepth * (x % perByte + 1);
+				int index = ((row[1 + x / perByte] & 0xFF) >>> shift) & mask;
+				// an index past the palette is black, like in ImageIO
+				pixels[offset + x] = opaque | ((index < palette.length) ? palette[index] : 0);
+			}
+		}
+	}
+
+	/**
+	 * This method closes the file
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	// main method just for testing: writes PNGs of every layout with ImageIO and reads them back
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(42);
+		int[] types = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+				BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_GRAY };
+		int[][] sizes = { { 1, 1 }, { 1, 50 }, { 50, 1 }, { 7, 13 }, { 300, 200 } };
+		File file = File.createTempFile("rows", ".png");
+		file.deleteOnExit();
+		int images = 0;
+		for (int type : types) {
+			for (int[] size : sizes) {
+				int width = size[0];
+				int height = size[1];
+				BufferedImage image;
+				if (type == BufferedImage.TYPE_BYTE_BINARY) {
+					// 16 colors, written with 4 bits per pixel
+					byte[] channel = new byte[16];
+					random.nextBytes(channel);
+					image = new BufferedImage(width, height, type, new IndexColorModel(4, 16, channel, channel, channel));
+				} else {
+					image = new BufferedImage(width, height, type);
+				}
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						// smooth areas and noise, so every filter gets used
+						int rgb = ((x / 8 + y / 8) % 3 == 0) ? random.nextInt() : new Color(x % 256, y % 256, (x * y) % 256, 200).getRGB();
+						image.setRGB(x, y, rgb);
+					}
+				}
+				ImageIO.write(image, "png", file);
+				BufferedImage expected = ImageIO.read(file);
+				PngRowReader reader = open(file.getPath());
+				if (type == BufferedImage.TYPE_BYTE_GRAY) {
+					if (reader != null) {
+						throw new IllegalStateException("! Error: a gray PNG was not left to ImageIO");
+					}
+					continue;
+				}
+				int[] pixels = new int[width * height];
+				try {
+					// a few rows at a time, then the rest
+					int first = Math.min(height, 3);
+					reader.readRows(pixels, first);
+					int[] rest = new int[width * (height - first)];
+					reader.readRows(rest, height - first);
+					System.arraycopy(rest, 0, pixels, width * first, rest.length);
+				} finally {
+					reader.close();
+				}
+				for (int i = 0; i < pixels.length; i++) {
+					int rgb = expected.getRGB(i % width, i / width);
+					if ((pixels[i] & 0xFFFFFF) != (rgb & 0xFFFFFF)) {
+						throw new IllegalStateException("! Error: pixel " + i + " of a " + width + "x" + height
+								+ " image of type " + type + " differs");
+					}
+				}
+				images++;
+			}
+		}
+		System.out.println(images + " PNGs decoded row by row like ImageIO");
+	}
+}
@@ -0,0 +1,270 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A raw raster file: a 16 byte header and then one 32-bit little-endian int per pixel,
+ * one row after another. The header is the magic "RAST", the width, the height and the
+ * kind of the ints, either packed RGB pixels or blob labels.
+ *
+ * Files are read and written through a memory map of the file, so the ints are copied
+ * once between the page cache and the int array, with nothing to decode or encode. The
+ * file is mapped a window at a time, so it can be larger than 2GB.
+ *
+ */
+public class RawRaster {
+	/** the ints are packed RGB pixels, the alpha byte is ignored */
+	public static final int PIXELS = 0;
+	/** the ints are blob labels, 0 for the background */
+	public static final int LABELS = 1;
+
+	private static final int MAGIC = 0x54534152; // "RAST" in little-endian
+	private static final int HEADER = 16; // the bytes before the first pixel
+	private static final int WINDOW = 1 << 26; // the ints mapped at a time
+
+	private int width; // the width of the raster
+	private int height; // the height of the raster
+	private int kind; // PIXELS or LABELS
+	private int[] data; // the ints, one row after another
+
+	/**
+	 * Initialize the raster
+	 *
+	 * @param width the width of the raster
+	 * @param height the height of the raster
+	 * @param kind PIXELS or LABELS
+	 * @param data the ints, one row after another, kept without copying
+	 */
+	public RawRaster(int width, int height, int kind, int[] data) {
+		if (width >= 0 && height >= 0 && (kind == PIXELS || kind == LABELS) && data != null
+				&& data.length >= (long) width * height) {
+			this.width = width;
+			this.height = height;
+			this.kind = kind;
+			this.data = data;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method checks if a file name is one of a raw raster
+	 *
+	 * @param fileName the file name
+	 * @return true if it ends with .raw
+	 */
+	public static boolean isRawRaster(String fileName) {
+		return fileName != null && fileName.toLowerCase().endsWith(".raw");
+	}
+
+	/**
+	 * This method reads a raw raster file
+	 *
+	 * @param fileName the name of the file
+	 * @return the raster
+	 * @throws IOException if the file cannot be read or is not a raw raster
+	 */
+	public static RawRaster read(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			int[] header = readHeader(channel, fileName);
+			if ((long) header[0] * header[1] > Integer.MAX_VALUE - 8) {
+				throw new IOException("! Error: " + fileName + " is too large to read at once");
+			}
+			return readRows(channel, header, 0, header[1]);
+		}
+	}
+
+	/**
+	 * This method reads some rows of a raw raster file, mapping only their part of the file,
+	 * so a raster of any size can be read a band at a time
+	 *
+	 * @param fileName the name of the file
+	 * @param firstRow the first row to read
+	 * @param rows the number of rows to read, fewer are read at the end of the raster
+	 * @return the rows, as a raster of the same width and kind
+	 * @throws IOException if the file cannot be read or is not a raw raster
+	 */
+	public static RawRaster readRows(String fileName, int firstRow, int rows) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			int[] header = readHeader(channel, fileName);
+			if (firstRow < 0 || rows < 0 || (long) header[0] * rows > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException();
+			}
+			return readRows(channel, header, firstRow, Math.max(0, Math.min(rows, header[1] - firstRow)));
+		}
+	}
+
+	/**
+	 * This method reads the width and height of a raw raster file from its header
+	 *
+	 * @param fileName the name of the file
+	 * @return the width and the height
+	 * @throws IOException if the file cannot be read or is not a raw raster
+	 */
+	public static int[] readSize(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			int[] header = readHeader(channel, fileName);
+			return new int[] { header[0], header[1] };
+		}
+	}
+
+	/**
+	 * This method reads and checks the header of a raw raster file
+	 *
+	 * @param channel the file
+	 * @param fileName the name of the file, for the error
+	 * @return the width, the height and the kind
+	 * @throws IOException if the file cannot be read or is not a raw raster
+	 */
+	private static int[] readHeader(FileChannel channel, String fileName) throws IOException {
+		long size = channel.size();
+		if (size < HEADER) {
+			throw new IOException("! Error: " + fileName + " is not a raw raster");
+		}
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		int magic = header.getInt();
+		int width = header.getInt();
+		int height = header.getInt();
+		int kind = header.getInt();
+		if (magic != MAGIC || width < 0 || height < 0 || (kind != PIXELS && kind != LABELS)
+				|| size != HEADER + 4L * width * height) {
+			throw new IOException("! Error: " + fileName + " is not a raw raster");
+		}
+		return new int[] { width, height, kind };
+	}
+
+	/**
+	 * This method reads rows of a raw raster file a window at a time
+	 *
+	 * @param channel the file
+	 * @param header the width, the height and the kind
+	 * @param firstRow the first row to read
+	 * @param rows the number of rows to read, all within the raster
+	 * @return the rows
+	 * @throws IOException if the file cannot be read
+	 */
+	private static RawRaster readRows(FileChannel channel, int[] header, int firstRow, int rows) throws IOException {
+		int width = header[0];
+		int[] data = new int[width * rows];
+		long base = HEADER + 4L * width * firstRow;
+		for (int from = 0; from < data.length; from += WINDOW) {
+			int length = Math.min(WINDOW, data.length - from);
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, base + 4L * from, 4L * length);
+			map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(data, from, length);
+		}
+		return new RawRaster(width, rows, header[2], data);
+	}
+
+	/**
+	 * This method writes the raster to a file, replacing it
+	 *
+	 * @param fileName the name of the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(width).putInt(height).putInt(kind);
+			int count = width * height;
+			for (int from = 0; from < count; from += WINDOW) {
+				int length = Math.min(WINDOW, count - from);
+				MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + 4L * from, 4L * length);
+				map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(data, from, length);
+			}
+		}
+	}
+
+	/**
+	 * This method wraps the pixels in a TYPE_INT_RGB image without copying them, so changes
+	 * to the image change the raster
+	 *
+	 * @return the image
+	 */
+	public BufferedImage toImage() {
+		if (kind != PIXELS) {
+			throw new IllegalStateException("! Error: a raster of labels is not an image");
+		}
+		DirectColorModel cm = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(data, width * height), width, height,
+				width, cm.getMasks(), null);
+		return new BufferedImage(cm, raster, false, null);
+	}
+
+	/**
+	 * @return the width of the raster
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the raster
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return PIXELS or LABELS
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the ints, one row after another
+	 */
+	public int[] getData() {
+		return data;
+	}
+
+	// main method just for testing: writes an image and a label map and reads them back
+	public static void main(String[] args) throws IOException {
+		int width = 300;
+		int height = 200;
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = new Color(i % 256, (i / 256) % 256, (i * 7) % 256).getRGB();
+		}
+		File file = File.createTempFile("raster", ".raw");
+		file.deleteOnExit();
+
+		new RawRaster(width, height, PIXELS, pixels).write(file.getPath());
+		RawRaster read = read(file.getPath());
+		BufferedImage image = read.toImage();
+		if (image.getType() != BufferedImage.TYPE_INT_RGB || !Arrays.equals(read.getData(), pixels)
+				|| image.getRGB(17, 33) != pixels[33 * width + 17]) {
+			throw new IllegalStateException("! Error: the pixels did not survive");
+		}
+
+		int[] labels = new int[width * height];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = i / 1000;
+		}
+		new RawRaster(width, height, LABELS, labels).write(file.getPath());
+		read = read(file.getPath());
+		if (read.getKind() != LABELS || !Arrays.equals(read.getData(), labels) || file.length() != HEADER + 4L * labels.length) {
+			throw new IllegalStateException("! Error: the labels did not survive");
+		}
+		RawRaster band = readRows(file.getPath(), 150, 100);
+		if (band.getHeight() != 50 || !Arrays.equals(band.getData(), Arrays.copyOfRange(labels, 150 * width, labels.length))
+				|| readSize(file.getPath())[1] != height) {
+			throw new IllegalStateException("! Error: the last rows did not survive");
+		}
+		System.out.println("raw rasters round trip");
+	}
+}
@@ -9,97 +9,90 @@ import java.util.Iterator;
 /**
  * Represents a generic Set which can operate basic functions such as
  * set, size, add, addAll, clear, Iterator
- * 
+ *
+ * The items are kept in a chain of arrays instead of a node per item, so iterating
+ * a large set is a scan through a few arrays, and addAll() still only links the
+ * arrays of the other set. A set can also be a view of one set of a DisjointSets,
+ * which keeps its members as a chain of indexes and has no Set of its own
+ *
  * @author SM Nazibullah Touhid
- * 
+ *
  */
 public class Set<T> extends AbstractCollection<T> {
+	private static final int MIN_CHUNK = 4; //the items in the first array of a set
+	private static final int MAX_CHUNK = 4096; //the items in the largest array
+
 	//Private classes
-	
-	/**
-	 * Represents a private generic Node class
-	 */
-	private static class Node<T> {
-		T value;
-		Node<T> next;
-		Node<T> prev;
 
-		public Node(T value) {
-			this.value = value;
-			this.next = null;
-			this.prev = null;
-		}
-	}
 	/**
-	 * Represents a private generic Linked List class which uses the Node class 
-	 * It has basic operations such as add, size
+	 * Represents a private array of items, linked to the next array of the set
 	 */
-	private static class List<T> {
+	private static class Chunk {
+		Object[] items;
+		int count;
+		Chunk next;
 
-		private Node<T> head;
-		private Node<T> tail;
-		private int size;
-	/**
-	 * Initialize the Linked List
-	 */
-		public List() {
-			this.head = null;
-			this.tail = null;
-		}
-	/**
-	 * This method adds a value to the linked list
-	 * 
-	 * @param value the value to be added
-	 */
-		public void add(T value) {
-			Node<T> temp = new Node<>(value);
-			if (value != null && head == null) {
-				head = temp;
-				tail = head;
-				size++;
-			} else if (value != null) {
-				Node<T> current = tail;
-				current.next = temp;
-				tail = temp;
-				temp.prev = current;
-				size++;
-			} else {
-				throw new NullPointerException();
-			}
-		}
-	/**
-	 * this method calculates the size of the list
-	 * 
-	 * @return the size of the list as a type Integer
-	 */
-		public int size() {
-			return this.size;
+		public Chunk(int capacity) {
+			this.items = new Object[capacity];
+			this.count = 0;
+			this.next = null;
 		}
-
 	}
 
-	private List<T> set;
+	private Chunk head;
+	private Chunk tail;
 	private int numOfItem;
+	private DisjointSets<T> owner; //the DisjointSets this set is a view of, or null
+	private int root; //the root of the set in owner
 
 	/**
 	 * Initialize the Set class
 	 */
 	public Set() {
-		set = new List<>();
+		head = null;
+		tail = null;
 		numOfItem = 0;
 
 	}
 
+	/**
+	 * Initialize the set as a view of a set of a DisjointSets. The view reads the
+	 * members of the DisjointSets in place, so it sees later unions, and it is empty once
+	 * root is no longer a root. Changing the view copies the members first
+	 *
+	 * @param owner the DisjointSets
+	 * @param root the root of the set
+	 */
+	Set(DisjointSets<T> owner, int root) {
+		if(owner!=null) {
+		this.owner = owner;
+		this.root = root;
+		}else {
+			throw new NullPointerException();
+		}
+	}
+
 	/**
 	 * this method adds an item to the set
-	 * 
+	 *
 	 * @param item the item to be added
-	 * 
-	 * @return a boolean expression 
+	 *
+	 * @return a boolean expression
 	 */
 	public boolean add(T item) {
 		if(item!=null) {
-		set.add(item);
+		detach();
+		if(tail==null || tail.count==tail.items.length) {
+			// every array is as large as the set so far, so there are few of them
+			Chunk chunk = new Chunk(Math.min(Math.max(numOfItem, MIN_CHUNK), MAX_CHUNK));
+			if(tail==null) {
+				head = chunk;
+			}else {
+				tail.next = chunk;
+			}
+			tail = chunk;
+		}
+		tail.items[tail.count++] = item;
 		numOfItem++;
 		return true;
 		}else {
@@ -108,57 +101,116 @@ public class Set<T> extends AbstractCollection<T> {
 	}
 
 	/**
-	 * This method adds another set to the set
-	 * 
+	 * This method adds another set to the set by moving its arrays, which leaves the
+	 * other set empty. A view of a DisjointSets is copied instead and left as it is
+	 *
 	 * @param other The set to be added
-	 * 
+	 *
 	 * @return a boolean expression
 	 */
 	public boolean addAll(Set<T> other) {
-		set.tail.next = other.set.head;
-		set.tail = other.set.tail;
-		numOfItem = numOfItem + other.numOfItem;
+		if(other!=null && other!=this) {
+		detach();
+		if(other.owner!=null) {
+			for(T item : other) {
+				add(item);
+			}
+		}else if(other.head!=null) {
+			if(tail==null) {
+				head = other.head;
+			}else {
+				tail.next = other.head;
+			}
+			tail = other.tail;
+			numOfItem = numOfItem + other.numOfItem;
+			other.clear();
+		}
 		return true;
+		}else if(other==null) {
+			throw new NullPointerException();
+		}else {
+			throw new IllegalArgumentException();
+		}
 	}
 
 	/**
 	 * This method makes the set empty
 	 */
 	public void clear() {
-		set.head = null;
+		owner = null;
+		head = null;
+		tail = null;
 		numOfItem = 0;
 	}
 
 	/**
 	 * This method calculates the number of item in the set
-	 * 
+	 *
 	 * @return the number of item in the set as a type int
 	 */
 	public int size() {
+		if(owner!=null) {
+			return owner.memberCount(root);
+		}
 		return numOfItem;
 	}
 
 	/**
 	 * This method iterates through the set
-	 * 
+	 *
 	 * @return an iterator
 	 */
 	public Iterator<T> iterator() {
+		if(owner!=null) {
+			return new Iterator<T>() {
+				int current = owner.firstMember(root);
+
+				public T next() {
+					T temp = owner.member(current);
+					current = owner.nextMember(current);
+					return temp;
+				}
+
+				public boolean hasNext() {
+					return (current >= 0);
+				}
+			};
+		}
 		return new Iterator<T>() {
-			Node<T> current = set.head;
+			Chunk chunk = head;
+			int index = 0;
+			int left = numOfItem; //the items not returned yet
 
+			@SuppressWarnings("unchecked")
 			public T next() {
-				T temp = current.value;
-				current = current.next;
-				return temp;
+				if(index==chunk.count) {
+					chunk = chunk.next;
+					index = 0;
+				}
+				left--;
+				return (T) chunk.items[index++];
 			}
 
 			public boolean hasNext() {
-				return (current != null);
+				return (left > 0);
 			}
 		};
 	}
 
+	/**
+	 * This method turns a view of a DisjointSets into a set of its own, copying the
+	 * members, before the set is changed
+	 */
+	private void detach() {
+		if(owner!=null) {
+			DisjointSets<T> from = owner;
+			owner = null;
+			for(int x = from.firstMember(root); x >= 0; x = from.nextMember(x)) {
+				add(from.member(x));
+			}
+		}
+	}
+
 	// main method just for testing
 	public static void main(String[] args) {
 
@@ -177,6 +229,7 @@ public class Set<T> extends AbstractCollection<T> {
 		s.addAll(s3);
 		System.out.println(s);// should return [10, 20, 30, 40, 50, 60, 70]
 		System.out.println(s.size());// should return 7
+		System.out.println(s2.size());// should return 0
 		s.clear();
 		System.out.println(s);// should return []
 		System.out.println(s.size());// should return 0
@@ -203,5 +256,16 @@ public class Set<T> extends AbstractCollection<T> {
 		System.out.println(s4);// should return []
 		System.out.println(s4.size());// should return 0
 
+		Set<Integer> s8 = new Set<>();
+		s8.addAll(s3);
+		Set<Integer> s9 = new Set<>();
+		for(int i = 0; i < 10000; i++)
+			s9.add(i);
+		s8.addAll(s9);
+		s8.add(10000);
+		long sum = 0;
+		for(int item : s8)
+			sum += item;
+		System.out.println(s8.size() + " " + sum);// should return 10001 50005000
 	}
 }
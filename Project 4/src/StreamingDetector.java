@@ -0,0 +1,689 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Detects the blobs of a color in an image that is too large to be decoded at once.
+ *
+ * The image is read band by band through an ImageReader with a source region, and every
+ * row is cut into runs and labeled like in BitmaskLabeler, but only the runs of the
+ * current and the previous row are kept. The labels form a small union-find forest that
+ * keeps the area, bounding box and centroid sums of every blob at its root. A blob with no
+ * run in the current row can no longer grow, so it is handed to the listener right away
+ * and its label is reused. Memory is bounded by the width of the image, not its size.
+ *
+ * The rows are decoded in a single pass: PNGs through PngRowReader, which keeps its
+ * inflater between bands, and raw rasters by mapping one band of the file at a time.
+ * Other formats go through an ImageReader with a source region per band, and readers of
+ * sequential formats like JPEG decode all the rows above the region again for every
+ * band, so those images should be converted to a raw raster first when they are large.
+ *
+ */
+public class StreamingDetector {
+	/**
+	 * Receives the blobs as soon as they can no longer grow
+	 */
+	public interface BlobListener {
+		/**
+		 * This method is called once for every finished blob that is not smaller than minArea
+		 *
+		 * @param blob the blob
+		 */
+		void blobFinished(Blob blob);
+	}
+
+	/**
+	 * A finished blob: its area, bounding box and centroid
+	 */
+	public static class Blob {
+		private final long firstPixel; // the id of the first pixel of the blob in raster order
+		private final int area;
+		private final int minX;
+		private final int minY;
+		private final int maxX;
+		private final int maxY;
+		private final double centroidX;
+		private final double centroidY;
+
+		private Blob(long firstPixel, BlobStats stats, int label) {
+			this.firstPixel = firstPixel;
+			this.area = stats.size(label);
+			this.minX = stats.minX(label);
+			this.minY = stats.minY(label);
+			this.maxX = stats.maxX(label);
+			this.maxY = stats.maxY(label);
+			this.centroidX = stats.centroidX(label);
+			this.centroidY = stats.centroidY(label);
+		}
+
+		/**
+		 * @return the number of pixels of the blob
+		 */
+		public int getArea() {
+			return area;
+		}
+
+		/**
+		 * @return the left of the bounding box
+		 */
+		public int getMinX() {
+			return minX;
+		}
+
+		/**
+		 * @return the top of the bounding box
+		 */
+		public int getMinY() {
+			return minY;
+		}
+
+		/**
+		 * @return the right of the bounding box
+		 */
+		public int getMaxX() {
+			return maxX;
+		}
+
+		/**
+		 * @return the bottom of the bounding box
+		 */
+		public int getMaxY() {
+			return maxY;
+		}
+
+		/**
+		 * @return the x of the centroid
+		 */
+		public double getCentroidX() {
+			return centroidX;
+		}
+
+		/**
+		 * @return the y of the centroid
+		 */
+		public double getCentroidY() {
+			return centroidY;
+		}
+	}
+
+	/**
+	 * The rows of an image, read from the top down
+	 */
+	private interface RowSource extends Closeable {
+		int getWidth();
+
+		int getHeight();
+
+		/**
+		 * This method reads the next rows as packed RGB pixels
+		 *
+		 * @param pixels gets the rows, one after another
+		 * @param rows the number of rows, at most the rows that are left
+		 * @throws IOException if the image cannot be read
+		 */
+		void readRows(int[] pixels, int rows) throws IOException;
+	}
+
+	// larger blobs first, and the blob that starts first in raster order when they are the same size
+	private static final Comparator<Blob> LARGEST_FIRST = new Comparator<Blob>() {
+		public int compare(Blob b1, Blob b2) {
+			if (b1.area != b2.area) {
+				return (b1.area > b2.area) ? -1 : 1;
+			}
+			return Long.compare(b1.firstPixel, b2.firstPixel);
+		}
+	};
+
+	private String imgFileName; // input image file name
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which "still counts" as the color
+	private int bandHeight = 64; // the number of rows read at a time
+	private int colorTableBits; // the bits per channel of the ColorMatcher table, 0 for none
+	private int minArea; // blobs with fewer pixels are not reported
+	private BlobListener listener; // gets every finished blob, or null
+	private PrintStream out = System.out; // where outputResults() prints the blobs
+
+	private int width; // the width of the image
+	private int[] parent; // the union-find forest of the labels, roots are their own parent
+	private long[] firstPixel; // the id of the first pixel of the blob of every root label
+	private BlobStats stats; // the statistics of every root label
+	private int[] free; // the labels that are not in use
+	private int freeCount;
+	private int k; // the number of blobs to keep for outputResults()
+	private int count; // the number of blobs reported
+	private PriorityQueue<Blob> top; // the k largest blobs so far, the smallest of them at the head
+	private ArrayList<Blob> topBlobs; // the k largest blobs, largest first, once detect() is done
+
+	/**
+	 * Initialize the StreamingDetector, the image is not read until detect()
+	 * @param imgfile the name of the image
+	 * @param blobColor the color to be detected
+	 * @param okDist the acceptable difference between the given color and a pixel color
+	 */
+	public StreamingDetector(String imgfile, Color blobColor, int okDist) {
+		if (imgfile != null && blobColor != null && okDist >= 0) {
+			this.imgFileName = imgfile;
+			this.blobColor = blobColor;
+			this.okDist = okDist;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * this method sets the number of rows that are decoded at a time
+	 * @param bandHeight the number of rows, at least 1
+	 */
+	public void setBandHeight(int bandHeight) {
+		if (bandHeight >= 1) {
+			this.bandHeight = bandHeight;
+		} else {
+			throw new IllegalArgumentException(new String("! Error: the band height should be at least 1, current height=" + bandHeight));
+		}
+	}
+
+	/**
+	 * this method makes thresholding use a table over the quantized colors, see ColorMatcher
+	 * @param colorTableBits 5 for a 32K table, 6 for a 256K table, 0 for none
+	 */
+	public void setColorTableBits(int colorTableBits) {
+		if (colorTableBits == 0 || colorTableBits == 5 || colorTableBits == 6) {
+			this.colorTableBits = colorTableBits;
+		} else {
+			throw new IllegalArgumentException(new String("! Error: the color table needs 5 or 6 bits, current bits=" + colorTableBits));
+		}
+	}
+
+	/**
+	 * this method drops blobs smaller than the given area, they are neither reported nor counted
+	 * @param minArea the smallest number of pixels of a blob that is reported
+	 */
+	public void setMinArea(int minArea) {
+		this.minArea = minArea;
+	}
+
+	/**
+	 * this method sets who gets the blobs as they are finished
+	 * @param listener the listener, or null for none
+	 */
+	public void setListener(BlobListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * this method sets where outputResults() prints the blobs
+	 * @param out the stream to print to
+	 */
+	public void setOutput(PrintStream out) {
+		if (out != null) {
+			this.out = out;
+		} else {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * This method reads the image band by band and reports every blob of the color to the
+	 * listener as soon as it is finished, keeping the k largest for outputResults()
+	 *
+	 * @param k the number of blobs to keep
+	 * @throws IOException if the image cannot be read
+	 */
+	public void detect(int k) throws IOException {
+		if (k < 1) {
+			throw new IllegalArgumentException(new String("! Error: k should be greater than 0, current k=" + k));
+		}
+		RowSource source = openRows();
+		try {
+			this.k = k;
+			this.count = 0;
+			this.top = new PriorityQueue<>(k, Collections.reverseOrder(LARGEST_FIRST));
+			scan(source);
+			this.topBlobs = new ArrayList<>(this.top);
+			Collections.sort(this.topBlobs, LARGEST_FIRST);
+			this.top = null;
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * This method opens the rows of the image, see the class comment for the formats
+	 *
+	 * @return the rows, at the top of the image
+	 * @throws IOException if the image cannot be read
+	 */
+	private RowSource openRows() throws IOException {
+		final String fileName = this.imgFileName;
+		if (RawRaster.isRawRaster(fileName)) {
+			final int[] size = RawRaster.readSize(fileName);
+			return new RowSource() {
+				private int next; // the first row not read yet
+
+				public int getWidth() {
+					return size[0];
+				}
+
+				public int getHeight() {
+					return size[1];
+				}
+
+				public void readRows(int[] pixels, int rows) throws IOException {
+					RawRaster band = RawRaster.readRows(fileName, next, rows);
+					System.arraycopy(band.getData(), 0, pixels, 0, size[0] * rows);
+					next += rows;
+				}
+
+				public void close() {
+				}
+			};
+		}
+		final PngRowReader png = PngRowReader.open(fileName);
+		if (png != null) {
+			return new RowSource() {
+				public int getWidth() {
+					return png.getWidth();
+				}
+
+				public int getHeight() {
+					return png.getHeight();
+				}
+
+				public void readRows(int[] pixels, int rows) throws IOException {
+					png.readRows(pixels, rows);
+				}
+
+				public void close() throws IOException {
+					png.close();
+				}
+			};
+		}
+		return openImageReader(fileName);
+	}
+
+	/**
+	 * This method opens the rows of an image through an ImageReader, reading every band as
+	 * a source region
+	 *
+	 * @param fileName the name of the image
+	 * @return the rows, at the top of the image
+	 * @throws IOException if the image cannot be read
+	 */
+	private static RowSource openImageReader(final String fileName) throws IOException {
+		final ImageInputStream input = ImageIO.createImageInputStream(new File(fileName));
+		if (input == null) {
+			throw new IOException("! Error: Failed to read " + fileName);
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			input.close();
+			throw new IOException("! Error: no image reader for " + fileName);
+		}
+		final ImageReader reader = readers.next();
+		reader.setInput(input, false, true);
+		final int width = reader.getWidth(0);
+		final int height = reader.getHeight(0);
+		return new RowSource() {
+			private int next; // the first row not read yet
+			private BufferedImage band; // the band image, reused for every band of the same height
+
+			public int getWidth() {
+				return width;
+			}
+
+			public int getHeight() {
+				return height;
+			}
+
+			public void readRows(int[] pixels, int rows) throws IOException {
+				if (band == null || band.getHeight() != rows) {
+					band = reader.getImageTypes(0).next().createBufferedImage(width, rows);
+				}
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setDestination(band);
+				param.setSourceRegion(new Rectangle(0, next, width, rows));
+				reader.read(0, param);
+				band.getRGB(0, 0, width, rows, pixels, 0, width);
+				next += rows;
+			}
+
+			public void close() throws IOException {
+				reader.dispose();
+				input.close();
+			}
+		};
+	}
+
+	/**
+	 * This method labels the image one row at a time
+	 *
+	 * @param source the rows of the image
+	 * @throws IOException if the image cannot be read
+	 */
+	private void scan(RowSource source) throws IOException {
+		this.width = source.getWidth();
+		int height = source.getHeight();
+		ColorMatcher matcher = new ColorMatcher(this.blobColor, this.okDist, this.colorTableBits);
+
+		// one band of pixels, reused for every band
+		int rows = Math.max(1, Math.min(this.bandHeight, height));
+		int[] pixels = new int[this.width * rows];
+		int wordsPerRow = (this.width + 63) >>> 6;
+
+		// the runs of the row above and of the current row
+		int maxRuns = (this.width + 1) / 2;
+		int[] aboveStarts = new int[maxRuns];
+		int[] aboveEnds = new int[maxRuns];
+		int[] aboveLabels = new int[maxRuns];
+		int aboveCount = 0;
+		int[] starts = new int[maxRuns];
+		int[] ends = new int[maxRuns];
+		int[] labels = new int[maxRuns];
+
+		// both rows together never use more labels than they have runs
+		int capacity = 2 * maxRuns + 2;
+		this.parent = new int[capacity];
+		this.firstPixel = new long[capacity];
+		this.stats = new BlobStats(capacity);
+		this.free = new int[capacity];
+		this.freeCount = 0;
+		for (int l = capacity - 1; l >= 1; l--) {
+			this.free[this.freeCount++] = l;
+		}
+		int[] seen = new int[capacity]; // the last row a root label was seen in
+		Arrays.fill(seen, -1);
+		int[] merged = new int[capacity]; // the labels merged away in the current row
+		int mergedCount = 0;
+
+		for (int bandTop = 0; bandTop < height; bandTop += rows) {
+			int bandRows = Math.min(rows, height - bandTop);
+			source.readRows(pixels, bandRows);
+			long[] mask = matcher.mask(pixels, this.width, bandRows);
+
+			for (int row = 0; row < bandRows; row++) {
+				int y = bandTop + row;
+				int count = BitmaskLabeler.rowRuns(mask, row * wordsPerRow, wordsPerRow, this.width, starts, ends);
+				int first = 0; // the first run above that can still overlap
+				for (int r = 0; r < count; r++) {
+					while (first < aboveCount && aboveEnds[first] <= starts[r]) {
+						first++;
+					}
+					int label = 0;
+					int next = first;
+					while (next < aboveCount && aboveStarts[next] < ends[r]) {
+						int other = find(aboveLabels[next]);
+						if (label == 0) {
+							label = other;
+						} else if (other != label) {
+							// two blobs of the row above meet in this run
+							if (mergedCount == merged.length) {
+								merged = Arrays.copyOf(merged, merged.length * 2);
+							}
+							merged[mergedCount++] = other;
+							this.parent[other] = label;
+							this.firstPixel[label] = Math.min(this.firstPixel[label], this.firstPixel[other]);
+							this.stats.merge(label, other);
+						}
+						next++;
+					}
+					// the last run above that overlaps can overlap the next run as well
+					if (next > first) {
+						first = next - 1;
+					}
+					if (label == 0) {
+						label = allocate();
+						this.firstPixel[label] = (long) y * this.width + starts[r];
+						if (label >= seen.length) {
+							seen = Arrays.copyOf(seen, this.parent.length);
+							Arrays.fill(seen, label, seen.length, -1);
+						}
+					}
+					this.stats.addRun(label, starts[r], y, ends[r] - starts[r], null, this.width);
+					labels[r] = label;
+				}
+
+				// a blob of the row above that did not reach this row is finished
+				for (int r = 0; r < count; r++) {
+					labels[r] = find(labels[r]);
+					seen[labels[r]] = y;
+				}
+				for (int r = 0; r < aboveCount; r++) {
+					int root = find(aboveLabels[r]);
+					if (seen[root] != y) {
+						seen[root] = y;
+						finish(root);
+					}
+				}
+				// nothing points at the merged labels any more
+				for (int i = 0; i < mergedCount; i++) {
+					this.free[this.freeCount++] = merged[i];
+				}
+				mergedCount = 0;
+
+				// this row becomes the row above
+				int[] temp = aboveStarts;
+				aboveStarts = starts;
+				starts = temp;
+				temp = aboveEnds;
+				aboveEnds = ends;
+				ends = temp;
+				temp = aboveLabels;
+				aboveLabels = labels;
+				labels = temp;
+				aboveCount = count;
+			}
+		}
+
+		// the blobs that reach the last row are finished as well
+		for (int r = 0; r < aboveCount; r++) {
+			int root = find(aboveLabels[r]);
+			if (seen[root] != height) {
+				seen[root] = height;
+				finish(root);
+			}
+		}
+	}
+
+	/**
+	 * This method takes a label that is not in use, making room for more if needed
+	 *
+	 * @return the label, its own root
+	 */
+	private int allocate() {
+		if (this.freeCount == 0) {
+			int capacity = this.parent.length;
+			this.parent = Arrays.copyOf(this.parent, capacity * 2);
+			this.firstPixel = Arrays.copyOf(this.firstPixel, capacity * 2);
+			this.free = Arrays.copyOf(this.free, capacity * 2);
+			for (int l = capacity * 2 - 1; l >= capacity; l--) {
+				this.free[this.freeCount++] = l;
+			}
+		}
+		int label = this.free[--this.freeCount];
+		this.parent[label] = label;
+		return label;
+	}
+
+	/**
+	 * This method finds the root of a label, halving the path on the way
+	 *
+	 * @param label the label
+	 * @return the root label
+	 */
+	private int find(int label) {
+		while (this.parent[label] != label) {
+			this.parent[label] = this.parent[this.parent[label]];
+			label = this.parent[label];
+		}
+		return label;
+	}
+
+	/**
+	 * This method reports a finished blob and frees its label
+	 *
+	 * @param root the root label of the blob
+	 */
+	private void finish(int root) {
+		if (this.stats.size(root) >= this.minArea) {
+			Blob blob = new Blob(this.firstPixel[root], this.stats, root);
+			this.count++;
+			if (this.top.size() < this.k) {
+				this.top.add(blob);
+			} else if (LARGEST_FIRST.compare(blob, this.top.peek()) < 0) {
+				this.top.poll();
+				this.top.add(blob);
+			}
+			if (this.listener != null) {
+				this.listener.blobFinished(blob);
+			}
+		}
+		this.stats.clear(root);
+		this.free[this.freeCount++] = root;
+	}
+
+	/**
+	 * This method gets the k largest blobs found by detect()
+	 *
+	 * @return the blobs, largest first
+	 */
+	public ArrayList<Blob> getTopBlobs() {
+		if (this.topBlobs == null) {
+			throw new IllegalStateException("! Error: detect() has not been run");
+		}
+		return this.topBlobs;
+	}
+
+	/**
+	 * This method prints the k largest blobs the same way as Detector.outputResults(), no
+	 * image is written since the whole image is never in memory
+	 */
+	public void outputResults() {
+		ArrayList<Blob> blobs = getTopBlobs();
+		this.out.println(blobs.size() + "/" + this.count);
+		for (int i = 0; i < blobs.size(); i++) {
+			this.out.println("Blob " + (i + 1) + ":" + blobs.get(i).getArea() + " pixels");
+		}
+	}
+
+	/**
+	 * This method prints the bounding box and centroid of the k largest blobs
+	 *
+	 * @param out the stream to print to
+	 */
+	public void printBlobDetails(PrintStream out) {
+		ArrayList<Blob> blobs = getTopBlobs();
+		for (int i = 0; i < blobs.size(); i++) {
+			Blob blob = blobs.get(i);
+			out.println("Blob " + (i + 1) + ": box (" + blob.getMinX() + "," + blob.getMinY() + ")-(" + blob.getMaxX()
+					+ "," + blob.getMaxY() + ") centroid ("
+					+ String.format("%.1f,%.1f", blob.getCentroidX(), blob.getCentroidY()) + ")");
+		}
+	}
+
+	// main method just for testing: compares the blobs with the in-memory FUSED mode for
+	// every kind of row source and band heights from 1 row to more than the image
+	public static void main(String[] args) throws IOException {
+		int width = 173;
+		int height = 121;
+		Color blobColor = new Color(200, 30, 40);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(42);
+		for (int i = 0; i < width * height; i++) {
+			// noise, some of it of the blob color
+			image.setRGB(i % width, i / width, (random.nextInt(10) == 0) ? blobColor.getRGB() : random.nextInt(1 << 24));
+		}
+		// blobs of all sizes that touch and wrap around each other
+		Graphics2D g2 = image.createGraphics();
+		g2.setColor(blobColor);
+		for (int i = 0; i < 25; i++) {
+			g2.fillOval(random.nextInt(width), random.nextInt(height), 3 + random.nextInt(40), 3 + random.nextInt(30));
+			g2.drawRect(random.nextInt(width), random.nextInt(height), 5 + random.nextInt(60), 5 + random.nextInt(60));
+		}
+		g2.dispose();
+
+		ArrayList<File> files = new ArrayList<>();
+		for (String format : new String[] { "png", "bmp", "jpg" }) {
+			File file = File.createTempFile("stream", "." + format);
+			file.deleteOnExit();
+			ImageIO.write(image, format, file);
+			files.add(file);
+		}
+		File raw = File.createTempFile("stream", ".raw");
+		raw.deleteOnExit();
+		new RawRaster(width, height, RawRaster.PIXELS, image.getRGB(0, 0, width, height, null, 0, width)).write(raw.getPath());
+		files.add(raw);
+		File output = File.createTempFile("stream_blob", ".png");
+		output.deleteOnExit();
+		File outputEC = File.createTempFile("stream_blob_ec", ".png");
+		outputEC.deleteOnExit();
+
+		for (File file : files) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			PrintStream expectedOut = new PrintStream(expected, true);
+			Detector detector = new Detector(file.getPath(), blobColor, 20);
+			detector.setMode(Detector.Mode.FUSED);
+			detector.setOutput(expectedOut);
+			detector.detect();
+			detector.outputResults(output.getPath(), outputEC.getPath(), 8);
+			detector.printBlobDetails(expectedOut);
+			String[] expectedLines = blobLines(expected);
+
+			for (int bandHeight : new int[] { 1, 3, 64, height + 10 }) {
+				ByteArrayOutputStream actual = new ByteArrayOutputStream();
+				PrintStream actualOut = new PrintStream(actual, true);
+				StreamingDetector streaming = new StreamingDetector(file.getPath(), blobColor, 20);
+				streaming.setBandHeight(bandHeight);
+				streaming.setOutput(actualOut);
+				streaming.detect(8);
+				streaming.outputResults();
+				streaming.printBlobDetails(actualOut);
+				String[] actualLines = blobLines(actual);
+				// the details of the in-memory detect also have the mean color
+				boolean same = actualLines.length == expectedLines.length;
+				for (int i = 0; same && i < actualLines.length; i++) {
+					same = expectedLines[i].equals(actualLines[i]) || expectedLines[i].startsWith(actualLines[i] + " mean color");
+				}
+				if (!same || actualLines.length < 3) {
+					throw new IllegalStateException("! Error: " + file.getName() + " with bands of " + bandHeight
+							+ " rows gives\n" + actual + "instead of\n" + expected);
+				}
+			}
+			System.out.println(file.getName().substring(file.getName().lastIndexOf('.') + 1) + ": " + expectedLines[0]
+					+ " blobs, the same with bands of 1, 3, 64 and " + (height + 10) + " rows");
+		}
+	}
+
+	/**
+	 * This method keeps the lines about blobs, without the lines about saved images
+	 *
+	 * @param printed what outputResults() and printBlobDetails() printed
+	 * @return the lines about blobs
+	 */
+	private static String[] blobLines(ByteArrayOutputStream printed) {
+		ArrayList<String> lines = new ArrayList<>();
+		for (String line : printed.toString().split("\\r?\\n")) {
+			if (!line.startsWith("- ")) {
+				lines.add(line);
+			}
+		}
+		return lines.toArray(new String[0]);
+	}
+}
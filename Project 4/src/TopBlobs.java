@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Selects the k largest blobs out of any number of them with a bounded heap, in
+ * O(n log k) time and O(k) space.
+ *
+ * A blob is an int id and a size, packed into one long key that sorts by size first
+ * (largest first) and by id when two blobs have the same size. The heap keeps the k
+ * best keys seen so far with the worst of them on top, so a new blob only has to beat
+ * the top to get in.
+ *
+ */
+public class TopBlobs {
+	private long[] heap; // the best keys so far, the worst of them at index 0
+	private int heapSize; // the number of keys in the heap
+	private int minArea; // blobs smaller than this are dropped
+	private int count; // the number of blobs offered and not dropped
+	private boolean finished; // whether the heap has been sorted
+
+	/**
+	 * Initialize the selection
+	 *
+	 * @param k the number of blobs to keep
+	 * @param minArea the smallest size of a blob that is ranked at all
+	 */
+	public TopBlobs(int k, int minArea) {
+		if (k >= 0) {
+			heap = new long[k];
+			this.minArea = minArea;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method offers a blob to the selection
+	 *
+	 * @param blob the id of the blob, not negative
+	 * @param size the number of pixels of the blob
+	 */
+	public void offer(int blob, int size) {
+		if (finished || blob < 0) {
+			throw new IllegalStateException();
+		}
+		if (size < minArea) {
+			return;
+		}
+		count++;
+		long key = ((long) -size << 32) | blob;
+		if (heapSize < heap.length) {
+			// sift up
+			int i = heapSize++;
+			while (i > 0 && heap[(i - 1) / 2] < key) {
+				heap[i] = heap[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			heap[i] = key;
+		} else if (heapSize > 0 && key < heap[0]) {
+			// replace the worst and sift down
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && heap[child + 1] > heap[child]) {
+					child++;
+				}
+				if (heap[child] <= key) {
+					break;
+				}
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = key;
+		}
+	}
+
+	/**
+	 * This method gets the number of blobs that were offered and not dropped
+	 *
+	 * @return the number of blobs
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * This method gets the number of blobs kept, which is k or count() if that is smaller
+	 *
+	 * @return the number of blobs kept
+	 */
+	public int size() {
+		return heapSize;
+	}
+
+	/**
+	 * This method gets a kept blob
+	 *
+	 * @param rank the rank of the blob, 0 is the largest
+	 * @return the id of the blob
+	 */
+	public int getBlob(int rank) {
+		finish();
+		return (int) heap[rank];
+	}
+
+	/**
+	 * This method gets the size of a kept blob
+	 *
+	 * @param rank the rank of the blob, 0 is the largest
+	 * @return the number of pixels of the blob
+	 */
+	public int getSize(int rank) {
+		finish();
+		return -(int) (heap[rank] >> 32);
+	}
+
+	/**
+	 * This method gets the ids of all kept blobs
+	 *
+	 * @return the ids of the blobs, largest first
+	 */
+	public int[] getBlobs() {
+		finish();
+		int[] blobs = new int[heapSize];
+		for (int i = 0; i < heapSize; i++) {
+			blobs[i] = (int) heap[i];
+		}
+		return blobs;
+	}
+
+	/**
+	 * This method sorts the kept blobs, after which no more blobs can be offered
+	 */
+	private void finish() {
+		if (!finished) {
+			Arrays.sort(heap, 0, heapSize);
+			finished = true;
+		}
+	}
+
+	// main method just for testing: compares the selection against sorting all the blobs
+	public static void main(String[] args) {
+		TopBlobs empty = new TopBlobs(3, 0);
+		if (empty.size() != 0 || empty.count() != 0 || empty.getBlobs().length != 0) {
+			throw new IllegalStateException("! Error: blobs in an empty selection");
+		}
+		TopBlobs none = new TopBlobs(3, 100);
+		none.offer(7, 99);
+		none.offer(2, 5);
+		if (none.size() != 0 || none.count() != 0) {
+			throw new IllegalStateException("! Error: blobs below minArea were kept");
+		}
+
+		Random random = new Random(42);
+		for (int round = 0; round < 1000; round++) {
+			int blobs = random.nextInt(50);
+			int k = 1 + random.nextInt(60); // larger than the number of blobs half of the time
+			int minArea = random.nextInt(4);
+			// few different sizes, so there are many ties
+			int[] sizes = new int[blobs];
+			TopBlobs top = new TopBlobs(k, minArea);
+			ArrayList<long[]> all = new ArrayList<>();
+			for (int id = 0; id < blobs; id++) {
+				sizes[id] = 1 + random.nextInt(8);
+				top.offer(id * 3, sizes[id]);
+				if (sizes[id] >= minArea) {
+					all.add(new long[] { sizes[id], id * 3 });
+				}
+			}
+			Collections.sort(all, new Comparator<long[]>() {
+				public int compare(long[] a, long[] b) {
+					return (a[0] != b[0]) ? Long.compare(b[0], a[0]) : Long.compare(a[1], b[1]);
+				}
+			});
+			int expected = Math.min(k, all.size());
+			if (top.size() != expected || top.count() != all.size() || top.getBlobs().length != expected) {
+				throw new IllegalStateException("! Error: kept " + top.size() + " of " + all.size() + " blobs, k=" + k);
+			}
+			for (int rank = 0; rank < expected; rank++) {
+				if (top.getBlob(rank) != all.get(rank)[1] || top.getSize(rank) != all.get(rank)[0]) {
+					throw new IllegalStateException("! Error: wrong blob at rank " + rank + " in round " + round);
+				}
+			}
+		}
+		System.out.println("top blobs match");
+	}
+}
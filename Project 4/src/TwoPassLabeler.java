@@ -0,0 +1,124 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Labels a thresholded image with the classic two-pass scan-line algorithm.
+ *
+ * The first pass gives every black pixel a provisional label copied from the pixel
+ * above or to the left of it, and records in an equivalence table when the two
+ * disagree. The table is then resolved into consecutive final labels, and a second
+ * pass relabels the pixels. Each pixel is read once per pass.
+ *
+ * The result uses the same encoding as PixelLabeler, so Detector can output it the
+ * same way: the root of a blob is its first pixel in raster order and every other
+ * pixel of the blob points straight at it. White pixels are left as single roots.
+ *
+ */
+public class TwoPassLabeler {
+	/**
+	 * This method labels the black pixels of a thresholded image
+	 *
+	 * @param pixels the thresholded image as packed RGB values, one row after another
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the union-find forest of the pixels, fully compressed
+	 */
+	public static int[] label(int[] pixels, int width, int height) {
+		if (pixels != null && width >= 0 && height >= 0 && pixels.length >= width * height) {
+			int white = Color.WHITE.getRGB();
+			int[] labels = new int[width * height];
+			int[] equivalences = new int[64];
+			int nextLabel = 1;
+
+			// first pass: provisional labels, 0 is the background
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int current = y * width + x;
+					if (Detector.getDifference(pixels[current], white) == 0) {
+						continue;
+					}
+					int above = (y > 0) ? labels[current - width] : 0;
+					int left = (x > 0) ? labels[current - 1] : 0;
+					if (above == 0 && left == 0) {
+						if (nextLabel == equivalences.length) {
+							equivalences = Arrays.copyOf(equivalences, equivalences.length * 2);
+						}
+						equivalences[nextLabel] = nextLabel;
+						labels[current] = nextLabel++;
+					} else if (above == 0 || left == 0 || above == left) {
+						labels[current] = (above != 0) ? above : left;
+					} else {
+						labels[current] = merge(equivalences, above, left);
+					}
+				}
+			}
+
+			// resolve the table; links always point to a smaller label so one sweep is enough
+			int finalCount = 0;
+			for (int l = 1; l < nextLabel; l++) {
+				if (equivalences[l] == l) {
+					equivalences[l] = ++finalCount;
+				} else {
+					equivalences[l] = equivalences[equivalences[l]];
+				}
+			}
+
+			// second pass: relabel into the forest encoding, rootOf holds first pixel + 1
+			int[] rootOf = new int[finalCount + 1];
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == 0) {
+					labels[i] = -1;
+				} else {
+					int blob = equivalences[labels[i]];
+					if (rootOf[blob] == 0) {
+						rootOf[blob] = i + 1;
+						labels[i] = -1;
+					} else {
+						int root = rootOf[blob] - 1;
+						labels[i] = root;
+						labels[root]--;
+					}
+				}
+			}
+			return labels;
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * This method records that two provisional labels belong to the same blob by linking
+	 * the root with the larger label under the one with the smaller label
+	 *
+	 * @param equivalences the equivalence table
+	 * @param label1 the first label
+	 * @param label2 the second label
+	 * @return the root label of the merged labels
+	 */
+	static int merge(int[] equivalences, int label1, int label2) {
+		int root1 = findRoot(equivalences, label1);
+		int root2 = findRoot(equivalences, label2);
+		if (root1 < root2) {
+			equivalences[root2] = root1;
+			return root1;
+		} else {
+			equivalences[root1] = root2;
+			return root2;
+		}
+	}
+
+	/**
+	 * This method finds the root of a provisional label, halving the path on the way
+	 *
+	 * @param equivalences the equivalence table
+	 * @param label the provisional label
+	 * @return the root label
+	 */
+	private static int findRoot(int[] equivalences, int label) {
+		while (equivalences[label] != label) {
+			equivalences[label] = equivalences[equivalences[label]];
+			label = equivalences[label];
+		}
+		return label;
+	}
+}